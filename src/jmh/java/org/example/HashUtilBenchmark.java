@@ -0,0 +1,66 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The SHA-256 primitives of {@link HashUtil}: allocating and buffer variants of leaf hashing
+ * and of combining two hashes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j.configurationFile=log4j2-benchmarks.xml")
+public class HashUtilBenchmark {
+
+    @Param({"32", "1024"})
+    private int length;
+
+    private byte[] data;
+    private String text;
+    private byte[] left;
+    private byte[] right;
+    private final byte[] out = new byte[HashUtil.SHA_256_LENGTH];
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        data = new byte[length];
+        random.nextBytes(data);
+        text = "x".repeat(length);
+        left = HashUtil.hash_sha_256(new byte[]{1});
+        right = HashUtil.hash_sha_256(new byte[]{2});
+    }
+
+    @Benchmark
+    public byte[] hash() {
+        return HashUtil.hash_sha_256(data);
+    }
+
+    @Benchmark
+    public byte[] hashInto() {
+        HashUtil.hashInto(data, 0, data.length, out, 0);
+        return out;
+    }
+
+    @Benchmark
+    public byte[] hashUtf8Into() {
+        HashUtil.hashUtf8Into(text, out, 0);
+        return out;
+    }
+
+    @Benchmark
+    public byte[] combineHash() {
+        return HashUtil.combineHash(left, right);
+    }
+
+    @Benchmark
+    public byte[] combineInto() {
+        HashUtil.combineInto(left, 0, right, 0, out, 0);
+        return out;
+    }
+}
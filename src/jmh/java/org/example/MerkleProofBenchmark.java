@@ -0,0 +1,70 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Proof generation by leaf position and by value, and verification, at random leaves.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "-Dlog4j.configurationFile=log4j2-benchmarks.xml"})
+public class MerkleProofBenchmark {
+
+    private static final int SAMPLES = 1024;
+
+    @Param({"1000", "1000000"})
+    private int leaves;
+
+    private MerkleTree tree;
+    private int[] indices;
+    private String[] values;
+    private List<List<MerkleProof>> proofs;
+    private ByteBuffer encoded;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        tree = new MerkleTree(IntStream.range(0, leaves).mapToObj(i -> "leaf-" + i).toList());
+        Random random = new Random(42);
+        indices = random.ints(SAMPLES, 0, leaves).toArray();
+        values = IntStream.of(indices).mapToObj(i -> "leaf-" + i).toArray(String[]::new);
+        proofs = IntStream.of(indices).mapToObj(tree::getMerkleProof).toList();
+        encoded = ByteBuffer.allocate(EncodedMerkleProof.encodedLength(64, tree.hashLength()));
+    }
+
+    private int sample() {
+        return next++ & (SAMPLES - 1);
+    }
+
+    @Benchmark
+    public List<MerkleProof> proofByIndex() {
+        return tree.getMerkleProof(indices[sample()]);
+    }
+
+    @Benchmark
+    public List<MerkleProof> proofByValue() {
+        return tree.getMerkleProof(values[sample()]);
+    }
+
+    @Benchmark
+    public ByteBuffer encodedProof() {
+        encoded.clear();
+        tree.writeMerkleProof(indices[sample()], encoded);
+        return encoded;
+    }
+
+    @Benchmark
+    public boolean verify() {
+        int i = sample();
+        return tree.verifyMerkleProof(values[i], proofs.get(i));
+    }
+}
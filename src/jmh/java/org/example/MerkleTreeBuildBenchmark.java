@@ -0,0 +1,43 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Builds a tree from scratch, on the calling thread or on the common pool.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g", "-Dlog4j.configurationFile=log4j2-benchmarks.xml"})
+public class MerkleTreeBuildBenchmark {
+
+    @Param({"1000", "1000000", "10000000"})
+    private int leaves;
+
+    @Param({"sync", "executor"})
+    private String mode;
+
+    private List<String> data;
+    private MerkleTreeConfig config;
+
+    @Setup
+    public void setUp() {
+        data = IntStream.range(0, leaves).mapToObj(i -> "leaf-" + i).toList();
+        config = MerkleTreeConfig.builder()
+                .executor("executor".equals(mode) ? ForkJoinPool.commonPool() : null)
+                .retainValues(false)
+                .build();
+    }
+
+    @Benchmark
+    public MerkleTree build() {
+        return new MerkleTree(data, config);
+    }
+}
@@ -0,0 +1,67 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Batch updates of a 1M-leaf tree, synchronous or on an executor. Clustered batches touch a
+ * contiguous run of leaves and share most ancestors; scattered batches touch random leaves.
+ * Every invocation flips the batch between two sets of values so each update changes the tree.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "-Dlog4j.configurationFile=log4j2-benchmarks.xml"})
+public class MerkleUpdateBenchmark {
+
+    private static final int LEAVES = 1_000_000;
+
+    @Param({"1", "64", "4096"})
+    private int batchSize;
+
+    @Param({"clustered", "scattered"})
+    private String pattern;
+
+    @Param({"sync", "executor"})
+    private String mode;
+
+    private MerkleTree tree;
+    private ExecutorService executor;
+    private List<List<MerkleNode>> batches;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        tree = new MerkleTree(IntStream.range(0, LEAVES).mapToObj(i -> "leaf-" + i).toList(),
+                MerkleTreeConfig.builder().parallelThreshold(1024).build());
+        executor = "executor".equals(mode) ? Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors()) : null;
+        Random random = new Random(42);
+        int start = random.nextInt(LEAVES - batchSize);
+        int[] indices = "clustered".equals(pattern)
+                ? IntStream.range(start, start + batchSize).toArray()
+                : random.ints(0, LEAVES).distinct().limit(batchSize).toArray();
+        batches = new ArrayList<>();
+        for (String prefix : new String[]{"a-", "b-"}) {
+            batches.add(IntStream.of(indices).mapToObj(i -> new MerkleNode(prefix + i, null, i)).toList());
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (executor != null) executor.shutdown();
+    }
+
+    @Benchmark
+    public void updateLeaves() {
+        tree.updateLeaves(batches.get(next++ & 1), executor);
+    }
+}
@@ -0,0 +1,148 @@
+package org.example;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Off-heap {@link HashStore} over direct {@link ByteBuffer}s, so the hashes of a level are neither
+ * scanned nor copied by the garbage collector. Hashes are read and written in place with absolute
+ * buffer operations, which makes writes to distinct nodes safe from parallel threads. Like
+ * {@link HeapHashStore} the level is split into chunks and only the last one is sized to fit.
+ * <p>
+ * The memory is freed by {@link #release()}, not when the store becomes unreachable; the store must
+ * not be used afterwards.
+ */
+public class DirectHashStore implements HashStore {
+
+    static final int CHUNK_SHIFT = 20;
+    static final int CHUNK_SLOTS = 1 << CHUNK_SHIFT;
+    static final int CHUNK_MASK = CHUNK_SLOTS - 1;
+
+    private static final byte[] ZEROES = new byte[4096];
+    // sun.misc.Unsafe#invokeCleaner frees a direct buffer at once; null where it is not accessible
+    private static final Object unsafe;
+    private static final Method invokeCleaner;
+
+    static {
+        Object instance = null;
+        Method cleaner = null;
+        try {
+            Class<?> type = Class.forName("sun.misc.Unsafe");
+            Field field = type.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            instance = field.get(null);
+            cleaner = type.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // buffers are then freed by the garbage collector
+        }
+        unsafe = instance;
+        invokeCleaner = cleaner;
+    }
+
+    private final int hashLength;
+    private ByteBuffer[] chunks = new ByteBuffer[0];
+    private int size;
+    private boolean released;
+
+    public DirectHashStore(int size, int hashLength) {
+        this.hashLength = hashLength;
+        resize(size);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int hashLength() {
+        return hashLength;
+    }
+
+    @Override
+    public void read(int index, byte[] dst, int dstOffset) {
+        checkIndex(index);
+        chunks[index >>> CHUNK_SHIFT].get((index & CHUNK_MASK) * hashLength, dst, dstOffset, hashLength);
+    }
+
+    @Override
+    public void read(int index, ByteBuffer dst) {
+        checkIndex(index);
+        dst.put(dst.position(), chunks[index >>> CHUNK_SHIFT], (index & CHUNK_MASK) * hashLength, hashLength);
+        dst.position(dst.position() + hashLength);
+    }
+
+    @Override
+    public void write(int index, byte[] src, int srcOffset) {
+        checkIndex(index);
+        chunks[index >>> CHUNK_SHIFT].put((index & CHUNK_MASK) * hashLength, src, srcOffset, hashLength);
+    }
+
+    @Override
+    public void resize(int newSize) {
+        checkLive();
+        if (newSize < 0) throw new IllegalArgumentException("size must not be negative: " + newSize);
+        int chunkCount = (newSize + CHUNK_MASK) >>> CHUNK_SHIFT;
+        for (int i = chunkCount; i < chunks.length; i++) {
+            free(chunks[i]);
+        }
+        chunks = Arrays.copyOf(chunks, chunkCount);
+        for (int i = 0; i < chunkCount; i++) {
+            int slots = Math.min(CHUNK_SLOTS, newSize - (i << CHUNK_SHIFT));
+            if (chunks[i] == null) {
+                chunks[i] = ByteBuffer.allocateDirect(slots * hashLength);
+            } else if (chunks[i].capacity() < slots * hashLength) {
+                // grow a partial chunk geometrically so repeated appends stay amortized O(1)
+                int grown = Math.min(CHUNK_SLOTS, Math.max(slots, 2 * chunks[i].capacity() / hashLength));
+                ByteBuffer chunk = ByteBuffer.allocateDirect(grown * hashLength);
+                chunk.put(0, chunks[i], 0, chunks[i].capacity());
+                free(chunks[i]);
+                chunks[i] = chunk;
+            }
+        }
+        if (newSize < size && chunkCount > 0) {
+            // clear the dropped slots of the last chunk so a later grow starts from zeroes
+            ByteBuffer last = chunks[chunkCount - 1];
+            for (int at = (newSize - ((chunkCount - 1) << CHUNK_SHIFT)) * hashLength; at < last.capacity(); at += ZEROES.length) {
+                last.put(at, ZEROES, 0, Math.min(ZEROES.length, last.capacity() - at));
+            }
+        }
+        size = newSize;
+    }
+
+    /**
+     * Frees the memory of every chunk. Later reads and writes throw {@link IllegalStateException}.
+     */
+    @Override
+    public void release() {
+        if (released) return;
+        released = true;
+        for (ByteBuffer chunk : chunks) {
+            free(chunk);
+        }
+        chunks = new ByteBuffer[0];
+        size = 0;
+    }
+
+    private static void free(ByteBuffer buffer) {
+        if (invokeCleaner == null) return;
+        try {
+            invokeCleaner.invoke(unsafe, buffer);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("cannot free a direct buffer", e);
+        }
+    }
+
+    private void checkLive() {
+        if (released) throw new IllegalStateException("the store was released");
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            checkLive();
+            throw new IndexOutOfBoundsException("node index " + index + " out of " + size);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package org.example;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Dense binary form of a single-leaf proof and a flyweight view over it. Directions are not
+ * stored: the sibling at level {@code l} is on the left exactly when bit {@code l} of the leaf
+ * index is set. A view reads sibling hashes straight from the buffer, so proofs received from
+ * a socket or a file can be verified without creating a {@link MerkleProof} per level. The
+ * leaf count bounds the leaf index: the last node of a level is combined with itself, so without
+ * it a proof of the last leaf would also verify at positions past the end of the tree. A
+ * verifier that knows the leaf count of the tree it trusts should compare it with {@link #leafCount()}.
+ * <pre>
+ * 0   int   leaf index
+ * 4   int   leaf count of the tree
+ * 8   byte  hash length
+ * 9   byte  depth, the number of sibling hashes
+ * 10  depth * hash length sibling hashes, leaf level first
+ * </pre>
+ */
+public final class EncodedMerkleProof {
+
+    public static final int HEADER_LENGTH = 10;
+
+    private final ByteBuffer buffer;
+    private final int offset;
+    private final int leafIndex;
+    private final int leafCount;
+    private final int hashLength;
+    private final int depth;
+
+    private EncodedMerkleProof(ByteBuffer buffer, int offset) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.leafIndex = buffer.getInt(offset);
+        this.leafCount = buffer.getInt(offset + 4);
+        this.hashLength = Byte.toUnsignedInt(buffer.get(offset + 8));
+        this.depth = Byte.toUnsignedInt(buffer.get(offset + 9));
+    }
+
+    public static int encodedLength(int depth, int hashLength) {
+        return HEADER_LENGTH + depth * hashLength;
+    }
+
+    /**
+     * Writes {@code proof} of the leaf at {@code leafIndex} of a tree of {@code leafCount} leaves,
+     * made of {@code hashLength}-byte hashes, at the position of {@code out}. The hash length is recorded even for the empty proof of a
+     * single-leaf tree, so that proof still verifies.
+     */
+    public static void encode(int leafIndex, int leafCount, List<MerkleProof> proof, int hashLength, ByteBuffer out) {
+        if (leafIndex < 0 || leafIndex >= leafCount || proof.size() != MerkleProofVerifier.depth(leafCount)) {
+            throw new IllegalArgumentException("proof does not belong to leaf " + leafIndex + " of " + leafCount);
+        }
+        writeHeader(leafIndex, leafCount, hashLength, proof.size(), out);
+        int index = leafIndex;
+        for (MerkleProof step : proof) {
+            MerkleProof.Direction expected = (index & 1) == 0 ? MerkleProof.Direction.RIGHT : MerkleProof.Direction.LEFT;
+            if (step.getDirection() != expected || step.getHash().length != hashLength) {
+                throw new IllegalArgumentException("proof does not belong to leaf " + leafIndex);
+            }
+            out.put(step.getHash());
+            index >>>= 1;
+        }
+    }
+
+    static void writeHeader(int leafIndex, int leafCount, int hashLength, int depth, ByteBuffer out) {
+        if (hashLength > 0xff || depth > 0xff) throw new IllegalArgumentException("hash length and depth must fit in one byte");
+        out.putInt(leafIndex).putInt(leafCount).put((byte) hashLength).put((byte) depth);
+    }
+
+    /**
+     * Returns a view of the proof at the position of {@code buffer} and moves the position past it.
+     * Throws {@link IllegalArgumentException} when the buffer ends before the header or the steps.
+     */
+    public static EncodedMerkleProof read(ByteBuffer buffer) {
+        if (buffer.remaining() < HEADER_LENGTH) {
+            throw new IllegalArgumentException("buffer holds " + buffer.remaining() + " bytes, a proof header needs " + HEADER_LENGTH);
+        }
+        EncodedMerkleProof proof = new EncodedMerkleProof(buffer, buffer.position());
+        int length = encodedLength(proof.depth, proof.hashLength);
+        if (buffer.remaining() < length) {
+            throw new IllegalArgumentException("buffer holds " + buffer.remaining() + " bytes, proof needs " + length);
+        }
+        buffer.position(buffer.position() + length);
+        return proof;
+    }
+
+    public int leafIndex() {
+        return leafIndex;
+    }
+
+    public int leafCount() {
+        return leafCount;
+    }
+
+    public int hashLength() {
+        return hashLength;
+    }
+
+    public int depth() {
+        return depth;
+    }
+
+    public MerkleProof.Direction direction(int level) {
+        return (leafIndex >>> level & 1) == 0 ? MerkleProof.Direction.RIGHT : MerkleProof.Direction.LEFT;
+    }
+
+    public void sibling(int level, byte[] dst, int dstOffset) {
+        buffer.get(siblingOffset(level), dst, dstOffset, hashLength);
+    }
+
+    public List<MerkleProof> toProofs() {
+        List<MerkleProof> proofs = new ArrayList<>(depth);
+        for (int level = 0; level < depth; level++) {
+            byte[] hash = new byte[hashLength];
+            sibling(level, hash, 0);
+            proofs.add(new MerkleProof(hash, direction(level)));
+        }
+        return proofs;
+    }
+
+    /**
+     * Checks that this proof leads from {@code leafHash} to {@code expectedRoot}, at a leaf index
+     * inside the tree and with one step per level of it. Siblings are fed to the hash straight from
+     * a heap buffer, or through one scratch hash for direct buffers.
+     */
+    public boolean verify(byte[] leafHash, byte[] expectedRoot, HashFunction hashFunction) {
+        if (hashLength != hashFunction.digestLength() || leafHash.length != hashLength
+                || leafIndex < 0 || leafIndex >= leafCount || depth != MerkleProofVerifier.depth(leafCount)) {
+            return false;
+        }
+        byte[] hash = leafHash.clone();
+        byte[] scratch = buffer.hasArray() ? null : new byte[hashLength];
+        for (int level = 0; level < depth; level++) {
+            byte[] source;
+            int at;
+            if (scratch == null) {
+                source = buffer.array();
+                at = buffer.arrayOffset() + siblingOffset(level);
+            } else {
+                sibling(level, scratch, 0);
+                source = scratch;
+                at = 0;
+            }
+            if (direction(level) == MerkleProof.Direction.LEFT) {
+                hashFunction.combine(source, at, hash, 0, hash, 0);
+            } else {
+                hashFunction.combine(hash, 0, source, at, hash, 0);
+            }
+        }
+        return Arrays.equals(hash, expectedRoot);
+    }
+
+    private int siblingOffset(int level) {
+        Objects.checkIndex(level, depth);
+        return offset + HEADER_LENGTH + level * hashLength;
+    }
+}
@@ -66,6 +66,7 @@ public class ExampleTest {
         leafE.setValue("e");
 
         tree.updateLeaves(List.of(leafA,leafD,leafE),executors);
+        executors.shutdown();
 
     }
 }
@@ -0,0 +1,50 @@
+package org.example;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link LevelSink} that appends the hashes of level {@code l} to {@code level-l.bin} in a directory.
+ */
+public class FileLevelSink implements LevelSink, Closeable {
+
+    private final Path directory;
+    private final int hashLength;
+    private final List<OutputStream> outputs = new ArrayList<>();
+
+    public FileLevelSink(Path directory, int hashLength) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.hashLength = hashLength;
+    }
+
+    public static Path levelFile(Path directory, int level) {
+        return directory.resolve("level-" + level + ".bin");
+    }
+
+    @Override
+    public void accept(int level, byte[] hash, int offset) throws IOException {
+        while (outputs.size() <= level) {
+            outputs.add(new BufferedOutputStream(Files.newOutputStream(levelFile(directory, outputs.size())), 1 << 16));
+        }
+        outputs.get(level).write(hash, offset, hashLength);
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (OutputStream output : outputs) {
+            try {
+                output.close();
+            } catch (IOException e) {
+                if (failure == null) failure = e;
+            }
+        }
+        if (failure != null) throw failure;
+    }
+}
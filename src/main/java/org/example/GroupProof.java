@@ -0,0 +1,72 @@
+package org.example;
+
+import lombok.Getter;
+
+import java.util.Arrays;
+
+/**
+ * Proof of one leaf in a tree of any arity. Per level, bottom-up, it carries the hashes of the
+ * other members of the leaf's sibling group from left to right; the leaf's position in each group
+ * follows from its index, and group slots past the end of a level are filled by the verifier with
+ * the level's last node, so they are not carried.
+ */
+@Getter
+public class GroupProof {
+
+    private final int leafCount;
+    private final int leafIndex;
+    private final int arity;
+    private final int hashLength;
+    // sibling hashes back to back
+    private final byte[] siblings;
+
+    public GroupProof(int leafCount, int leafIndex, int arity, int hashLength, byte[] siblings) {
+        this.leafCount = leafCount;
+        this.leafIndex = leafIndex;
+        this.arity = arity;
+        this.hashLength = hashLength;
+        this.siblings = siblings;
+    }
+
+    /**
+     * Number of levels above the leaves, i.e. of groups hashed during verification.
+     */
+    public int depth() {
+        int depth = 0;
+        for (long size = leafCount; size > 1; size = (size + arity - 1) / arity) {
+            depth++;
+        }
+        return depth;
+    }
+
+    public boolean verify(byte[] leafHash, byte[] expectedRoot, HashFunction hashFunction) {
+        int length = hashLength;
+        if (arity < 2 || arity > 16 || Integer.bitCount(arity) != 1 || hashFunction.digestLength() != length
+                || leafHash.length != length || leafIndex < 0 || leafIndex >= leafCount || siblings.length % length != 0) {
+            return false;
+        }
+        byte[] group = new byte[arity * length];
+        byte[] node = leafHash.clone();
+        int index = leafIndex;
+        int cursor = 0;
+        for (int size = leafCount; size > 1; size = (size + arity - 1) / arity) {
+            int first = index - index % arity;
+            int last = Math.min(first + arity, size) - 1;
+            for (int j = 0; j < arity; j++) {
+                int child = first + j;
+                if (child == index) {
+                    System.arraycopy(node, 0, group, j * length, length);
+                } else if (child <= last) {
+                    if (cursor == siblings.length) return false;
+                    System.arraycopy(siblings, cursor, group, j * length, length);
+                    cursor += length;
+                } else {
+                    System.arraycopy(group, (last - first) * length, group, j * length, length);
+                }
+            }
+            MerkleTree.hashGroup(hashFunction, arity, group, node, 0);
+            index /= arity;
+        }
+        return cursor == siblings.length && Arrays.equals(node, expectedRoot);
+    }
+}
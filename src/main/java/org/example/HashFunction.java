@@ -1,7 +1,67 @@
 package org.example;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
+/**
+ * Hash used for leaves and inner nodes of a tree. Only {@link #hash(byte[])} and
+ * {@link #digestLength()} are required; implementations override the buffer variants
+ * to avoid allocating on the hot path.
+ */
 public interface HashFunction {
 
     byte[] hash(byte[] data);
+
+    /**
+     * Length in bytes of every digest produced by this function.
+     */
+    int digestLength();
+
+    /**
+     * Hashes {@code data[offset, offset + length)} into {@code out[outOffset, outOffset + digestLength())}.
+     */
+    default void hash(byte[] data, int offset, int length, byte[] out, int outOffset) {
+        byte[] input = offset == 0 && length == data.length ? data : Arrays.copyOfRange(data, offset, offset + length);
+        System.arraycopy(hash(input), 0, out, outOffset, digestLength());
+    }
+
+    /**
+     * Hashes the remaining bytes of {@code data} into {@code out[outOffset, outOffset + digestLength())}
+     * without moving the buffer's position.
+     */
+    default void hash(ByteBuffer data, byte[] out, int outOffset) {
+        if (data.hasArray()) {
+            hash(data.array(), data.arrayOffset() + data.position(), data.remaining(), out, outOffset);
+        } else {
+            byte[] copy = new byte[data.remaining()];
+            data.get(data.position(), copy);
+            hash(copy, 0, copy.length, out, outOffset);
+        }
+    }
+
+    /**
+     * Hashes the UTF-8 encoding of a leaf value.
+     */
+    default void hashUtf8(String value, byte[] out, int outOffset) {
+        ByteBuffer encoded = Utf8.encode(value);
+        hash(encoded.array(), encoded.arrayOffset(), encoded.limit(), out, outOffset);
+    }
+
+    /**
+     * Hashes the {@code left} digest followed by the {@code right} digest into {@code out}, which
+     * may overlap either input.
+     */
+    default void combine(byte[] left, int leftOffset, byte[] right, int rightOffset, byte[] out, int outOffset) {
+        int length = digestLength();
+        byte[] pair = new byte[2 * length];
+        System.arraycopy(left, leftOffset, pair, 0, length);
+        System.arraycopy(right, rightOffset, pair, length, length);
+        hash(pair, 0, pair.length, out, outOffset);
+    }
+
+    default byte[] combine(byte[] left, byte[] right) {
+        byte[] result = new byte[digestLength()];
+        combine(left, 0, right, 0, result, 0);
+        return result;
+    }
 }
@@ -0,0 +1,67 @@
+package org.example;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Fixed-width storage for the hashes of one tree level, addressed by node index.
+ */
+public interface HashStore {
+
+    int size();
+
+    int hashLength();
+
+    void read(int index, byte[] dst, int dstOffset);
+
+    void write(int index, byte[] src, int srcOffset);
+
+    /**
+     * Copies the hash at {@code index} to the position of {@code dst} and advances it.
+     */
+    default void read(int index, ByteBuffer dst) {
+        if (dst.hasArray()) {
+            read(index, dst.array(), dst.arrayOffset() + dst.position());
+            dst.position(dst.position() + hashLength());
+        } else {
+            dst.put(get(index));
+        }
+    }
+
+    /**
+     * Grows or shrinks the store to {@code size} slots, keeping the hashes below both sizes.
+     */
+    void resize(int size);
+
+    /**
+     * Makes every write durable; a no-op for stores that are not backed by a file.
+     */
+    default void flush() {
+    }
+
+    /**
+     * Frees memory the store holds outside the heap; the store must not be used afterwards.
+     * A no-op for stores whose memory the garbage collector reclaims.
+     */
+    default void release() {
+    }
+
+    /**
+     * Returns a store holding the current hashes that later writes to this store do not affect.
+     * This default copies every hash to the heap.
+     */
+    default HashStore snapshot() {
+        HeapHashStore copy = new HeapHashStore(size(), hashLength());
+        byte[] hash = new byte[hashLength()];
+        for (int i = 0; i < size(); i++) {
+            read(i, hash, 0);
+            copy.write(i, hash, 0);
+        }
+        return copy;
+    }
+
+    default byte[] get(int index) {
+        byte[] hash = new byte[hashLength()];
+        read(index, hash, 0);
+        return hash;
+    }
+}
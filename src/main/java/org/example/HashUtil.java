@@ -1,26 +1,46 @@
 package org.example;
 
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-
+/**
+ * SHA-256 shortcuts on a shared {@link Hash_SHA_256}. The {@code *Into} variants write the
+ * digest into a caller-provided buffer and allocate nothing once a thread is warmed up.
+ */
 public final class HashUtil {
 
+    public static final int SHA_256_LENGTH = 32;
+
+    private static final Hash_SHA_256 sha256 = new Hash_SHA_256();
+
+    private HashUtil() {
+    }
+
     public static byte[] hash_sha_256(byte[] data){
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-           /* byte[] truncatedHash = new byte[16]; // 128-bit output
-            System.arraycopy(hash, 0, truncatedHash, 0, truncatedHash.length);*/
-            return digest.digest(data);
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("SHA-256 hash algorithm not found.", e);
-        }
+        return sha256.hash(data);
     }
 
     public static byte[] combineHash(byte[] left, byte[] right) {
-        byte[] result = new byte[left.length+right.length];
-        System.arraycopy(left, 0, result, 0, left.length);
-        System.arraycopy(right, 0, result, left.length, right.length);
-        return hash_sha_256(result);
+        return sha256.combine(left, right);
+
+    }
+
+    /**
+     * Hashes {@code data[offset, offset + length)} into {@code out[outOffset, outOffset + 32)}.
+     */
+    public static void hashInto(byte[] data, int offset, int length, byte[] out, int outOffset) {
+        sha256.hash(data, offset, length, out, outOffset);
+    }
+
+    /**
+     * Hashes the UTF-8 encoding of {@code value} into {@code out[outOffset, outOffset + 32)}.
+     */
+    public static void hashUtf8Into(String value, byte[] out, int outOffset) {
+        sha256.hashUtf8(value, out, outOffset);
+    }
 
+    /**
+     * Hashes the 32-byte {@code left} hash followed by the 32-byte {@code right} hash into
+     * {@code out}. {@code out} may overlap either input.
+     */
+    public static void combineInto(byte[] left, int leftOffset, byte[] right, int rightOffset, byte[] out, int outOffset) {
+        sha256.combine(left, leftOffset, right, rightOffset, out, outOffset);
     }
 }
@@ -0,0 +1,141 @@
+package org.example;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Pure Java BLAKE2b (RFC 7693) with a 32-byte digest and no key. Combining two child
+ * hashes fits into a single compression call.
+ */
+public class Hash_BLAKE2b_256 implements HashFunction {
+
+    private static final int DIGEST_LENGTH = 32;
+    private static final int BLOCK_LENGTH = 128;
+    private static final VarHandle LONG_LE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private static final long[] IV = {
+            0x6a09e667f3bcc908L, 0xbb67ae8584caa73bL, 0x3c6ef372fe94f82bL, 0xa54ff53a5f1d36f1L,
+            0x510e527fade682d1L, 0x9b05688c2b3e6c1fL, 0x1f83d9abfb41bd6bL, 0x5be0cd19137e2179L
+    };
+
+    private static final byte[][] SIGMA = {
+            {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15},
+            {14, 10, 4, 8, 9, 15, 13, 6, 1, 12, 0, 2, 11, 7, 5, 3},
+            {11, 8, 12, 0, 5, 2, 15, 13, 10, 14, 3, 6, 7, 1, 9, 4},
+            {7, 9, 3, 1, 13, 12, 11, 14, 2, 6, 5, 10, 4, 0, 15, 8},
+            {9, 0, 5, 7, 2, 4, 10, 15, 14, 1, 11, 12, 6, 8, 3, 13},
+            {2, 12, 6, 10, 0, 11, 8, 3, 4, 13, 7, 5, 15, 14, 1, 9},
+            {12, 5, 1, 15, 14, 13, 4, 10, 0, 7, 6, 3, 9, 2, 8, 11},
+            {13, 11, 7, 14, 12, 1, 3, 9, 5, 0, 15, 4, 8, 6, 2, 10},
+            {6, 15, 14, 9, 11, 3, 0, 8, 12, 2, 13, 7, 1, 4, 10, 5},
+            {10, 2, 8, 4, 7, 6, 1, 5, 15, 11, 9, 14, 3, 12, 13, 0}
+    };
+
+    // h[0..8) chaining value, m[8..24) message block, v[24..40) working vector
+    private final ThreadLocal<long[]> states = ThreadLocal.withInitial(() -> new long[40]);
+
+    @Override
+    public byte[] hash(byte[] data) {
+        byte[] out = new byte[DIGEST_LENGTH];
+        hash(data, 0, data.length, out, 0);
+        return out;
+    }
+
+    @Override
+    public int digestLength() {
+        return DIGEST_LENGTH;
+    }
+
+    @Override
+    public void hash(byte[] data, int offset, int length, byte[] out, int outOffset) {
+        long[] s = init();
+        long counter = 0;
+        while (length > BLOCK_LENGTH) {
+            for (int i = 0; i < 16; i++) {
+                s[8 + i] = readLong(data, offset + 8 * i);
+            }
+            counter += BLOCK_LENGTH;
+            compress(s, counter, false);
+            offset += BLOCK_LENGTH;
+            length -= BLOCK_LENGTH;
+        }
+        for (int i = 0; i < 16; i++) {
+            s[8 + i] = readPartialLong(data, offset + 8 * i, length - 8 * i);
+        }
+        compress(s, counter + length, true);
+        writeDigest(s, out, outOffset);
+    }
+
+    @Override
+    public void combine(byte[] left, int leftOffset, byte[] right, int rightOffset, byte[] out, int outOffset) {
+        long[] s = init();
+        for (int i = 0; i < 4; i++) {
+            s[8 + i] = readLong(left, leftOffset + 8 * i);
+            s[12 + i] = readLong(right, rightOffset + 8 * i);
+        }
+        for (int i = 16; i < 24; i++) {
+            s[i] = 0;
+        }
+        compress(s, 2 * DIGEST_LENGTH, true);
+        writeDigest(s, out, outOffset);
+    }
+
+    private long[] init() {
+        long[] s = states.get();
+        System.arraycopy(IV, 0, s, 0, 8);
+        s[0] ^= 0x01010000L ^ DIGEST_LENGTH;
+        return s;
+    }
+
+    private static void compress(long[] s, long counter, boolean last) {
+        System.arraycopy(s, 0, s, 24, 8);
+        System.arraycopy(IV, 0, s, 32, 8);
+        s[36] ^= counter;
+        if (last) s[38] = ~s[38];
+        for (int round = 0; round < 12; round++) {
+            byte[] sigma = SIGMA[round % 10];
+            mix(s, 24, 28, 32, 36, sigma[0], sigma[1]);
+            mix(s, 25, 29, 33, 37, sigma[2], sigma[3]);
+            mix(s, 26, 30, 34, 38, sigma[4], sigma[5]);
+            mix(s, 27, 31, 35, 39, sigma[6], sigma[7]);
+            mix(s, 24, 29, 34, 39, sigma[8], sigma[9]);
+            mix(s, 25, 30, 35, 36, sigma[10], sigma[11]);
+            mix(s, 26, 31, 32, 37, sigma[12], sigma[13]);
+            mix(s, 27, 28, 33, 38, sigma[14], sigma[15]);
+        }
+        for (int i = 0; i < 8; i++) {
+            s[i] ^= s[24 + i] ^ s[32 + i];
+        }
+    }
+
+    private static void mix(long[] s, int a, int b, int c, int d, int x, int y) {
+        s[a] += s[b] + s[8 + x];
+        s[d] = Long.rotateRight(s[d] ^ s[a], 32);
+        s[c] += s[d];
+        s[b] = Long.rotateRight(s[b] ^ s[c], 24);
+        s[a] += s[b] + s[8 + y];
+        s[d] = Long.rotateRight(s[d] ^ s[a], 16);
+        s[c] += s[d];
+        s[b] = Long.rotateRight(s[b] ^ s[c], 63);
+    }
+
+    private static void writeDigest(long[] s, byte[] out, int outOffset) {
+        for (int i = 0; i < DIGEST_LENGTH / 8; i++) {
+            LONG_LE.set(out, outOffset + 8 * i, s[i]);
+        }
+    }
+
+    private static long readLong(byte[] b, int offset) {
+        return (long) LONG_LE.get(b, offset);
+    }
+
+    private static long readPartialLong(byte[] b, int offset, int available) {
+        if (available >= 8) return readLong(b, offset);
+        long v = 0;
+        for (int i = available - 1; i >= 0; i--) {
+            v = (v << 8) | (b[offset + i] & 0xffL);
+        }
+        return v;
+    }
+}
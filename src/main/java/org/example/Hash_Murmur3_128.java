@@ -0,0 +1,94 @@
+package org.example;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * MurmurHash3 x64 128-bit with seed 0, digest is h1 then h2 in little-endian order.
+ * It is NOT collision resistant against adversarial input: use it only for trees that
+ * guard against accidental corruption, such as internal dedup or integrity checks.
+ */
+public class Hash_Murmur3_128 implements HashFunction {
+
+    private static final int DIGEST_LENGTH = 16;
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+    private static final VarHandle LONG_LE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final ThreadLocal<byte[]> pairs = ThreadLocal.withInitial(() -> new byte[2 * DIGEST_LENGTH]);
+
+    @Override
+    public byte[] hash(byte[] data) {
+        byte[] out = new byte[DIGEST_LENGTH];
+        hash(data, 0, data.length, out, 0);
+        return out;
+    }
+
+    @Override
+    public int digestLength() {
+        return DIGEST_LENGTH;
+    }
+
+    @Override
+    public void hash(byte[] data, int offset, int length, byte[] out, int outOffset) {
+        long h1 = 0;
+        long h2 = 0;
+        int end = offset + (length & ~15);
+        for (int i = offset; i < end; i += 16) {
+            h1 ^= mixK1((long) LONG_LE.get(data, i));
+            h1 = Long.rotateLeft(h1, 27) + h2;
+            h1 = h1 * 5 + 0x52dce729;
+            h2 ^= mixK2((long) LONG_LE.get(data, i + 8));
+            h2 = Long.rotateLeft(h2, 31) + h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+        long k1 = 0;
+        long k2 = 0;
+        int tail = length & 15;
+        for (int i = tail - 1; i >= 8; i--) {
+            k2 = (k2 << 8) | (data[end + i] & 0xffL);
+        }
+        for (int i = Math.min(tail, 8) - 1; i >= 0; i--) {
+            k1 = (k1 << 8) | (data[end + i] & 0xffL);
+        }
+        if (tail > 8) h2 ^= mixK2(k2);
+        if (tail > 0) h1 ^= mixK1(k1);
+
+        h1 ^= length;
+        h2 ^= length;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix(h1);
+        h2 = fmix(h2);
+        h1 += h2;
+        h2 += h1;
+        LONG_LE.set(out, outOffset, h1);
+        LONG_LE.set(out, outOffset + 8, h2);
+    }
+
+    @Override
+    public void combine(byte[] left, int leftOffset, byte[] right, int rightOffset, byte[] out, int outOffset) {
+        byte[] pair = pairs.get();
+        System.arraycopy(left, leftOffset, pair, 0, DIGEST_LENGTH);
+        System.arraycopy(right, rightOffset, pair, DIGEST_LENGTH, DIGEST_LENGTH);
+        hash(pair, 0, pair.length, out, outOffset);
+    }
+
+    private static long mixK1(long k1) {
+        return Long.rotateLeft(k1 * C1, 31) * C2;
+    }
+
+    private static long mixK2(long k2) {
+        return Long.rotateLeft(k2 * C2, 33) * C1;
+    }
+
+    private static long fmix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
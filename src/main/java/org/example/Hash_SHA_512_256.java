@@ -0,0 +1,12 @@
+package org.example;
+
+/**
+ * SHA-512/256: SHA-512 truncated to 32 bytes with its own initial values. Faster than
+ * SHA-256 on 64-bit CPUs without SHA extensions.
+ */
+public class Hash_SHA_512_256 extends MessageDigestHashFunction {
+
+    public Hash_SHA_512_256() {
+        super("SHA-512/256");
+    }
+}
@@ -0,0 +1,130 @@
+package org.example;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * On-heap {@link HashStore} that packs hashes back to back in fixed-size pages,
+ * so a level is a handful of large arrays instead of one object per node and
+ * is not limited by the maximum length of a single Java array. Only the last page is sized
+ * to fit, so growing the store copies at most one page.
+ * <p>
+ * Pages are also the unit of copy-on-write: a {@link #snapshot()} shares every page with the
+ * store, and the first write to a shared page afterwards copies it.
+ */
+public class HeapHashStore implements HashStore {
+
+    static final int PAGE_SHIFT = 12;
+    static final int PAGE_SLOTS = 1 << PAGE_SHIFT;
+    static final int PAGE_MASK = PAGE_SLOTS - 1;
+
+    private final int hashLength;
+    private final boolean readOnly;
+    private byte[][] pages = new byte[0][];
+    // generation in which each page was last copied, older pages are shared with a snapshot
+    private AtomicIntegerArray owners = new AtomicIntegerArray(0);
+    private int generation;
+    private int size;
+
+    public HeapHashStore(int size, int hashLength) {
+        this.hashLength = hashLength;
+        this.readOnly = false;
+        resize(size);
+    }
+
+    private HeapHashStore(byte[][] pages, int size, int hashLength) {
+        this.hashLength = hashLength;
+        this.readOnly = true;
+        this.pages = pages;
+        this.size = size;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int hashLength() {
+        return hashLength;
+    }
+
+    @Override
+    public void read(int index, byte[] dst, int dstOffset) {
+        checkIndex(index);
+        System.arraycopy(pages[index >>> PAGE_SHIFT], (index & PAGE_MASK) * hashLength, dst, dstOffset, hashLength);
+    }
+
+    @Override
+    public void write(int index, byte[] src, int srcOffset) {
+        checkWritable();
+        checkIndex(index);
+        System.arraycopy(src, srcOffset, ownedPage(index >>> PAGE_SHIFT), (index & PAGE_MASK) * hashLength, hashLength);
+    }
+
+    @Override
+    public void resize(int newSize) {
+        checkWritable();
+        if (newSize < 0) throw new IllegalArgumentException("size must not be negative: " + newSize);
+        int pageCount = (newSize + PAGE_MASK) >>> PAGE_SHIFT;
+        if (pageCount != pages.length) {
+            pages = Arrays.copyOf(pages, pageCount);
+            AtomicIntegerArray resized = new AtomicIntegerArray(pageCount);
+            for (int i = 0; i < Math.min(pageCount, owners.length()); i++) {
+                resized.set(i, owners.get(i));
+            }
+            owners = resized;
+        }
+        for (int i = 0; i < pageCount; i++) {
+            int slots = Math.min(PAGE_SLOTS, newSize - (i << PAGE_SHIFT));
+            if (pages[i] == null) {
+                pages[i] = new byte[slots * hashLength];
+                owners.set(i, generation);
+            } else if (pages[i].length < slots * hashLength) {
+                // grow a partial page geometrically so repeated appends stay amortized O(1)
+                int grown = Math.min(PAGE_SLOTS, Math.max(slots, 2 * pages[i].length / hashLength));
+                pages[i] = Arrays.copyOf(pages[i], grown * hashLength);
+                owners.set(i, generation);
+            }
+        }
+        if (newSize < size && pageCount > 0) {
+            // clear the dropped slots of the last page so a later grow starts from zeroes
+            int from = (newSize - ((pageCount - 1) << PAGE_SHIFT)) * hashLength;
+            byte[] last = ownedPage(pageCount - 1);
+            Arrays.fill(last, from, last.length, (byte) 0);
+        }
+        size = newSize;
+    }
+
+    /**
+     * Returns a read-only store sharing every page with this one. Costs one reference per page;
+     * later writes to this store copy the pages they touch and leave the snapshot unchanged.
+     * Must not run concurrently with writes.
+     */
+    @Override
+    public HeapHashStore snapshot() {
+        generation++;
+        return new HeapHashStore(pages.clone(), size, hashLength);
+    }
+
+    private byte[] ownedPage(int page) {
+        if (owners.get(page) != generation) {
+            // parallel writers may hit the same shared page, only one of them copies it
+            synchronized (this) {
+                if (owners.get(page) != generation) {
+                    pages[page] = pages[page].clone();
+                    owners.set(page, generation);
+                }
+            }
+        }
+        return pages[page];
+    }
+
+    private void checkWritable() {
+        if (readOnly) throw new UnsupportedOperationException("a snapshot store is read-only");
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException("node index " + index + " out of " + size);
+    }
+}
@@ -0,0 +1,56 @@
+package org.example;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of non-negative values in power-of-two buckets: bucket {@code b} counts
+ * values in {@code [2^(b-1), 2^b)}, so percentiles are exact to within a factor of two.
+ */
+public final class Histogram {
+
+    private final AtomicLongArray buckets = new AtomicLongArray(64);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+
+    public void record(long value) {
+        long clamped = Math.max(value, 0);
+        buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(clamped));
+        count.increment();
+        sum.add(clamped);
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public long sum() {
+        return sum.sum();
+    }
+
+    public double mean() {
+        long n = count();
+        return n == 0 ? 0 : (double) sum() / n;
+    }
+
+    /**
+     * Returns the upper bound of the bucket holding the {@code quantile} (0 to 1) of the recorded values.
+     */
+    public long percentile(double quantile) {
+        long n = count();
+        if (n == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(quantile * n));
+        long seen = 0;
+        for (int b = 0; b < buckets.length(); b++) {
+            seen += buckets.get(b);
+            if (seen >= rank) return b == 0 ? 0 : b >= 63 ? Long.MAX_VALUE : (1L << b) - 1;
+        }
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + count() + " mean=" + Math.round(mean()) + " p50=" + percentile(0.5)
+                + " p99=" + percentile(0.99) + " max<=" + percentile(1.0);
+    }
+}
@@ -0,0 +1,83 @@
+package org.example;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * {@link MerkleTreeMetrics} that keeps a {@link Histogram} per measurement in process, to be
+ * read by a monitoring endpoint or printed with {@link #toString()}.
+ */
+public class InMemoryMerkleTreeMetrics implements MerkleTreeMetrics {
+
+    private final Map<Operation, Histogram> latencies = new EnumMap<>(Operation.class);
+    private final Map<Operation, Histogram> hashes = new EnumMap<>(Operation.class);
+    private final Map<Operation, Histogram> lockWaits = new EnumMap<>(Operation.class);
+    private final Histogram dirtyNodes = new Histogram();
+
+    public InMemoryMerkleTreeMetrics() {
+        for (Operation operation : Operation.values()) {
+            latencies.put(operation, new Histogram());
+            hashes.put(operation, new Histogram());
+            lockWaits.put(operation, new Histogram());
+        }
+    }
+
+    @Override
+    public void recordLatency(Operation operation, long nanos) {
+        latencies.get(operation).record(nanos);
+    }
+
+    @Override
+    public void recordHashes(Operation operation, long count) {
+        hashes.get(operation).record(count);
+    }
+
+    @Override
+    public void recordLockWait(Operation operation, long nanos) {
+        lockWaits.get(operation).record(nanos);
+    }
+
+    @Override
+    public void recordDirtyNodes(long nodes) {
+        dirtyNodes.record(nodes);
+    }
+
+    /**
+     * Latencies of {@code operation} in nanoseconds.
+     */
+    public Histogram latency(Operation operation) {
+        return latencies.get(operation);
+    }
+
+    /**
+     * Hashes computed per {@code operation}.
+     */
+    public Histogram hashes(Operation operation) {
+        return hashes.get(operation);
+    }
+
+    /**
+     * Lock waits of {@code operation} in nanoseconds.
+     */
+    public Histogram lockWait(Operation operation) {
+        return lockWaits.get(operation);
+    }
+
+    /**
+     * Nodes rehashed per update.
+     */
+    public Histogram dirtyNodes() {
+        return dirtyNodes;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder();
+        for (Operation operation : Operation.values()) {
+            out.append(operation).append(" latency ns: ").append(latency(operation))
+                    .append(", hashes: ").append(hashes(operation))
+                    .append(", lock wait ns: ").append(lockWait(operation)).append('\n');
+        }
+        return out.append("dirty nodes: ").append(dirtyNodes).toString();
+    }
+}
@@ -0,0 +1,315 @@
+package org.example;
+
+import java.util.Arrays;
+
+/**
+ * Hash index from leaf hash to leaf position. It is an open-addressing table with one slot per
+ * distinct leaf hash whose keys are read back from the leaf level, so it never copies a hash.
+ * A slot holds the position of the only leaf with its hash or, for a hash held by several
+ * leaves, a posting list of their positions in ascending order; duplicates therefore cost one
+ * probe and one binary search rather than a walk over every copy.
+ * <p>
+ * The table and the posting lists are copied on write like the pages of a {@link HeapHashStore}:
+ * a {@link #snapshot} shares them and reads its keys from the leaf level of the same version,
+ * and the first change to a shared page or list afterwards copies it. Changes are made by one
+ * writer at a time, and a leaf whose hash is being changed must be moved with {@link #reindex}
+ * before any other leaf of the level is changed: the index reads the keys of all other leaves
+ * from the level.
+ */
+final class LeafIndex {
+
+    static final int PAGE_SHIFT = 12;
+    static final int PAGE_SLOTS = 1 << PAGE_SHIFT;
+    static final int PAGE_MASK = PAGE_SLOTS - 1;
+
+    private static final int EMPTY = -1;
+    private static final int DELETED = -2;
+    // a slot value at or below LIST names the posting list LIST - value
+    private static final int LIST = -3;
+
+    private final HashStore leaves;
+    private final boolean readOnly;
+    // slot table of mask + 1 slots, in pages
+    private int[][] slots;
+    private int mask;
+    // posting lists in pages; a list holds its length followed by its leaf positions
+    private int[][][] lists;
+
+    // writer state, not shared with snapshots: the generation in which each slot page, list
+    // page and list was last copied, counts of used slots, and unused posting list ids
+    private int generation;
+    private int[] slotOwners;
+    private int[] listPageOwners;
+    private int[] listOwners;
+    private int distinct;
+    private int used;
+    private int listCount;
+    private int[] freeLists;
+    private int freeCount;
+
+    LeafIndex(HashStore leaves) {
+        this.leaves = leaves;
+        this.readOnly = false;
+        this.lists = new int[0][][];
+        this.listPageOwners = new int[0];
+        this.listOwners = new int[0];
+        this.freeLists = new int[0];
+        newTable(leaves.size());
+        byte[] hash = new byte[leaves.hashLength()];
+        for (int i = 0; i < leaves.size(); i++) {
+            leaves.read(i, hash, 0);
+            insert(i, hash);
+        }
+    }
+
+    private LeafIndex(HashStore leaves, int[][] slots, int mask, int[][][] lists) {
+        this.leaves = leaves;
+        this.readOnly = true;
+        this.slots = slots;
+        this.mask = mask;
+        this.lists = lists;
+    }
+
+    /**
+     * Returns a read-only index of the same leaves, read from {@code versionLeaves}, the snapshot
+     * of the leaf level taken with it. Costs one reference per page.
+     */
+    LeafIndex snapshot(HashStore versionLeaves) {
+        generation++;
+        return new LeafIndex(versionLeaves, slots.clone(), mask, lists.clone());
+    }
+
+    /**
+     * Returns every leaf position whose hash equals {@code hash}, in ascending order.
+     */
+    int[] findAll(byte[] hash) {
+        int s = find(hash);
+        if (s < 0) return new int[0];
+        int value = slot(s);
+        if (value >= 0) return new int[]{value};
+        int[] members = list(LIST - value);
+        return Arrays.copyOfRange(members, 1, 1 + members[0]);
+    }
+
+    /**
+     * Returns the lowest leaf position whose hash equals {@code hash}, or -1.
+     */
+    int findFirst(byte[] hash) {
+        int s = find(hash);
+        return s < 0 ? -1 : keyOf(slot(s));
+    }
+
+    /**
+     * Moves {@code leaf} from {@code oldHash} to the hash currently stored for it in the leaf level.
+     */
+    void reindex(int leaf, byte[] oldHash) {
+        remove(leaf, oldHash);
+        add(leaf);
+    }
+
+    /**
+     * Indexes {@code leaf} under the hash currently stored for it in the leaf level.
+     */
+    void add(int leaf) {
+        insert(leaf, leaves.get(leaf));
+    }
+
+    /**
+     * Drops {@code leaf}, which must still be indexed under {@code hash}. The leaf level may
+     * already hold a new hash for {@code leaf}.
+     */
+    void remove(int leaf, byte[] hash) {
+        checkWritable();
+        byte[] candidate = new byte[hash.length];
+        for (int s = bucket(hash, mask); slot(s) != EMPTY; s = (s + 1) & mask) {
+            int value = slot(s);
+            if (value == leaf) {
+                setSlot(s, DELETED);
+                distinct--;
+                return;
+            }
+            if (value > LIST) continue;
+            int[] members = list(LIST - value);
+            // key the list by a member other than leaf, whose stored hash may be the new one
+            int key = members[1] != leaf ? members[1] : members[2];
+            if (matches(key, hash, candidate)) {
+                removeFromList(s, LIST - value, leaf);
+                return;
+            }
+        }
+    }
+
+    private void removeFromList(int slot, int list, int leaf) {
+        int[] members = ownedList(list);
+        int size = members[0];
+        int at = Arrays.binarySearch(members, 1, 1 + size, leaf);
+        if (at < 0) return;
+        System.arraycopy(members, at + 1, members, at, size - at);
+        members[0] = --size;
+        if (size == 1) {
+            setSlot(slot, members[1]);
+            setList(list, null);
+            if (freeCount == freeLists.length) freeLists = Arrays.copyOf(freeLists, Math.max(4, freeCount * 2));
+            freeLists[freeCount++] = list;
+        }
+    }
+
+    private void insert(int leaf, byte[] hash) {
+        checkWritable();
+        int s = find(hash);
+        if (s >= 0) {
+            addToSlot(s, leaf);
+            return;
+        }
+        if ((used + 1) * 4L > (mask + 1L) * 3L) {
+            rehash();
+        }
+        s = bucket(hash, mask);
+        while (slot(s) != EMPTY && slot(s) != DELETED) {
+            s = (s + 1) & mask;
+        }
+        if (slot(s) == EMPTY) used++;
+        setSlot(s, leaf);
+        distinct++;
+    }
+
+    private void addToSlot(int slot, int leaf) {
+        int value = slot(slot);
+        if (value >= 0) {
+            int list = newList();
+            setList(list, value < leaf ? new int[]{2, value, leaf, 0, 0} : new int[]{2, leaf, value, 0, 0});
+            setSlot(slot, LIST - list);
+            return;
+        }
+        int list = LIST - value;
+        int[] members = ownedList(list);
+        int size = members[0];
+        if (size + 1 == members.length) {
+            members = Arrays.copyOf(members, members.length * 2);
+            setList(list, members);
+        }
+        // leaves are mostly added in ascending order, by builds and appends
+        int at = members[size] < leaf ? size + 1 : -Arrays.binarySearch(members, 1, 1 + size, leaf) - 1;
+        System.arraycopy(members, at, members, at + 1, size + 1 - at);
+        members[at] = leaf;
+        members[0] = size + 1;
+    }
+
+    /**
+     * Returns the slot holding {@code hash}, or -1.
+     */
+    private int find(byte[] hash) {
+        byte[] candidate = new byte[hash.length];
+        for (int s = bucket(hash, mask); ; s = (s + 1) & mask) {
+            int value = slot(s);
+            if (value == EMPTY) return -1;
+            if (value != DELETED && matches(keyOf(value), hash, candidate)) return s;
+        }
+    }
+
+    /**
+     * Returns the lowest leaf of a slot value, which holds the hash the slot is keyed by.
+     */
+    private int keyOf(int value) {
+        return value >= 0 ? value : list(LIST - value)[1];
+    }
+
+    private int slot(int s) {
+        return slots[s >>> PAGE_SHIFT][s & PAGE_MASK];
+    }
+
+    private void setSlot(int s, int value) {
+        int page = s >>> PAGE_SHIFT;
+        if (slotOwners[page] != generation) {
+            slots[page] = slots[page].clone();
+            slotOwners[page] = generation;
+        }
+        slots[page][s & PAGE_MASK] = value;
+    }
+
+    private int[] list(int list) {
+        return lists[list >>> PAGE_SHIFT][list & PAGE_MASK];
+    }
+
+    private int[] ownedList(int list) {
+        int[] members = list(list);
+        if (listOwners[list] != generation) {
+            members = members.clone();
+            setList(list, members);
+        }
+        return members;
+    }
+
+    private void setList(int list, int[] members) {
+        int page = list >>> PAGE_SHIFT;
+        if (listPageOwners[page] != generation) {
+            lists[page] = lists[page].clone();
+            listPageOwners[page] = generation;
+        }
+        lists[page][list & PAGE_MASK] = members;
+        listOwners[list] = generation;
+    }
+
+    private int newList() {
+        if (freeCount > 0) return freeLists[--freeCount];
+        int list = listCount++;
+        int page = list >>> PAGE_SHIFT;
+        if (page == lists.length) {
+            lists = Arrays.copyOf(lists, page + 1);
+            lists[page] = new int[PAGE_SLOTS][];
+            listPageOwners = Arrays.copyOf(listPageOwners, page + 1);
+            listPageOwners[page] = generation;
+        }
+        if (list == listOwners.length) listOwners = Arrays.copyOf(listOwners, Math.max(16, list * 2));
+        return list;
+    }
+
+    private void rehash() {
+        int[][] old = slots;
+        newTable(distinct + 1);
+        used = 0;
+        byte[] hash = new byte[leaves.hashLength()];
+        for (int[] page : old) {
+            for (int value : page) {
+                if (value == EMPTY || value == DELETED) continue;
+                leaves.read(keyOf(value), hash, 0);
+                int s = bucket(hash, mask);
+                while (slot(s) != EMPTY) {
+                    s = (s + 1) & mask;
+                }
+                setSlot(s, value);
+                used++;
+            }
+        }
+    }
+
+    /**
+     * Replaces the slot table with an empty one of room for {@code entries} slots.
+     */
+    private void newTable(int entries) {
+        int capacity = Integer.highestOneBit(Math.max(entries, 2) * 2 - 1) << 1;
+        int pageCount = Math.max(1, capacity >>> PAGE_SHIFT);
+        slots = new int[pageCount][Math.min(capacity, PAGE_SLOTS)];
+        for (int[] page : slots) {
+            Arrays.fill(page, EMPTY);
+        }
+        slotOwners = new int[pageCount];
+        Arrays.fill(slotOwners, generation);
+        mask = capacity - 1;
+    }
+
+    private boolean matches(int leaf, byte[] hash, byte[] candidate) {
+        leaves.read(leaf, candidate, 0);
+        return Arrays.equals(candidate, hash);
+    }
+
+    private void checkWritable() {
+        if (readOnly) throw new UnsupportedOperationException("a snapshot of the leaf index is read-only");
+    }
+
+    private static int bucket(byte[] hash, int mask) {
+        int h = (hash[0] & 0xff) | (hash[1] & 0xff) << 8 | (hash[2] & 0xff) << 16 | (hash[3] & 0xff) << 24;
+        h *= 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
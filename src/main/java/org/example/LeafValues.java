@@ -0,0 +1,103 @@
+package org.example;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * String values of the leaves of a tree, in pages that are copied on write like those of a
+ * {@link HeapHashStore}: a {@link #snapshot()} shares every page, and the first change to a
+ * shared page afterwards copies it. Changes are made by one writer at a time.
+ */
+final class LeafValues {
+
+    static final int PAGE_SHIFT = 12;
+    static final int PAGE_SLOTS = 1 << PAGE_SHIFT;
+    static final int PAGE_MASK = PAGE_SLOTS - 1;
+
+    private final boolean readOnly;
+    private String[][] pages = new String[0][];
+    // generation in which each page was last copied, older pages are shared with a snapshot
+    private int[] owners = new int[0];
+    private int generation;
+    private int size;
+
+    LeafValues(List<String> values) {
+        this.readOnly = false;
+        addAll(values);
+    }
+
+    private LeafValues(String[][] pages, int size) {
+        this.readOnly = true;
+        this.pages = pages;
+        this.size = size;
+    }
+
+    int size() {
+        return size;
+    }
+
+    String get(int index) {
+        checkIndex(index);
+        return pages[index >>> PAGE_SHIFT][index & PAGE_MASK];
+    }
+
+    void set(int index, String value) {
+        checkWritable();
+        checkIndex(index);
+        ownedPage(index >>> PAGE_SHIFT)[index & PAGE_MASK] = value;
+    }
+
+    void addAll(List<String> values) {
+        int from = size;
+        resize(size + values.size());
+        for (int i = 0; i < values.size(); i++) {
+            set(from + i, values.get(i));
+        }
+    }
+
+    /**
+     * Grows the list with null values or drops the values from {@code newSize} on.
+     */
+    void resize(int newSize) {
+        checkWritable();
+        int pageCount = (newSize + PAGE_MASK) >>> PAGE_SHIFT;
+        if (pageCount != pages.length) {
+            int oldCount = pages.length;
+            pages = Arrays.copyOf(pages, pageCount);
+            owners = Arrays.copyOf(owners, pageCount);
+            for (int page = oldCount; page < pageCount; page++) {
+                pages[page] = new String[PAGE_SLOTS];
+                owners[page] = generation;
+            }
+        }
+        if (newSize < size && (newSize & PAGE_MASK) != 0) {
+            // clear the dropped values of the last page so a later grow starts from nulls
+            Arrays.fill(ownedPage(pageCount - 1), newSize & PAGE_MASK, PAGE_SLOTS, null);
+        }
+        size = newSize;
+    }
+
+    /**
+     * Returns read-only values sharing every page with these; costs one reference per page.
+     */
+    LeafValues snapshot() {
+        generation++;
+        return new LeafValues(pages.clone(), size);
+    }
+
+    private String[] ownedPage(int page) {
+        if (owners[page] != generation) {
+            pages[page] = pages[page].clone();
+            owners[page] = generation;
+        }
+        return pages[page];
+    }
+
+    private void checkWritable() {
+        if (readOnly) throw new UnsupportedOperationException("a snapshot of leaf values is read-only");
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException("leaf index " + index + " out of " + size);
+    }
+}
@@ -0,0 +1,12 @@
+package org.example;
+
+import java.io.IOException;
+
+/**
+ * Receives the node hashes of a tree as they are computed. Within a level, nodes are always
+ * delivered from left to right.
+ */
+public interface LevelSink {
+
+    void accept(int level, byte[] hash, int offset) throws IOException;
+}
@@ -0,0 +1,56 @@
+package org.example;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process {@link SyncTransport} that hands every frame to a {@link TreeSyncServer}, on the
+ * calling thread or on an executor. Frames are copied as they would be on the wire, and the bytes
+ * moved in each direction are counted.
+ */
+public class LoopbackSyncTransport implements SyncTransport {
+
+    private final TreeSyncServer server;
+    private final Executor executor;
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+
+    public LoopbackSyncTransport(TreeSyncServer server) {
+        this(server, null);
+    }
+
+    public LoopbackSyncTransport(TreeSyncServer server, Executor executor) {
+        this.server = server;
+        this.executor = executor;
+    }
+
+    @Override
+    public CompletableFuture<byte[]> exchange(byte[] request) {
+        byte[] frame = Arrays.copyOf(request, request.length);
+        bytesSent.addAndGet(frame.length);
+        if (executor == null) return CompletableFuture.completedFuture(respond(frame));
+        return CompletableFuture.supplyAsync(() -> respond(frame), executor);
+    }
+
+    private byte[] respond(byte[] request) {
+        byte[] response = server.handle(request);
+        bytesReceived.addAndGet(response.length);
+        return Arrays.copyOf(response, response.length);
+    }
+
+    /**
+     * Bytes of every request frame sent so far.
+     */
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    /**
+     * Bytes of every response frame received so far.
+     */
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+}
@@ -0,0 +1,78 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * {@link HashStore} over a region of a file mapped with {@link FileChannel#map}. Hashes are
+ * read from and written to the mapped pages directly, so a level can be larger than the heap
+ * and writes land in the file. The region is mapped in chunks because a single mapping is
+ * limited to 2 GB. The size of a mapped store is fixed.
+ */
+public class MappedHashStore implements HashStore {
+
+    private static final int CHUNK_SHIFT = 24;
+    private static final int CHUNK_SLOTS = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SLOTS - 1;
+
+    private final int hashLength;
+    private final int size;
+    private final MappedByteBuffer[] chunks;
+
+    public MappedHashStore(FileChannel channel, FileChannel.MapMode mode, long offset, int size, int hashLength) throws IOException {
+        this.hashLength = hashLength;
+        this.size = size;
+        this.chunks = new MappedByteBuffer[(size + CHUNK_MASK) >>> CHUNK_SHIFT];
+        for (int i = 0; i < chunks.length; i++) {
+            long slots = Math.min(CHUNK_SLOTS, size - ((long) i << CHUNK_SHIFT));
+            chunks[i] = channel.map(mode, offset + ((long) i << CHUNK_SHIFT) * hashLength, slots * hashLength);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int hashLength() {
+        return hashLength;
+    }
+
+    @Override
+    public void read(int index, byte[] dst, int dstOffset) {
+        checkIndex(index);
+        chunks[index >>> CHUNK_SHIFT].get((index & CHUNK_MASK) * hashLength, dst, dstOffset, hashLength);
+    }
+
+    @Override
+    public void read(int index, ByteBuffer dst) {
+        checkIndex(index);
+        dst.put(dst.position(), chunks[index >>> CHUNK_SHIFT], (index & CHUNK_MASK) * hashLength, hashLength);
+        dst.position(dst.position() + hashLength);
+    }
+
+    @Override
+    public void write(int index, byte[] src, int srcOffset) {
+        checkIndex(index);
+        chunks[index >>> CHUNK_SHIFT].put((index & CHUNK_MASK) * hashLength, src, srcOffset, hashLength);
+    }
+
+    @Override
+    public void resize(int size) {
+        throw new UnsupportedOperationException("a memory-mapped level has a fixed size");
+    }
+
+    @Override
+    public void flush() {
+        for (MappedByteBuffer chunk : chunks) {
+            chunk.force();
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException("node index " + index + " out of " + size);
+    }
+}
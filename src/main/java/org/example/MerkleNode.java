@@ -4,24 +4,21 @@ import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.Setter;
 
-import java.nio.charset.StandardCharsets;
 import java.util.HexFormat;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+/**
+ * Detached handle of one leaf. The tree itself keeps hashes in flat level arrays;
+ * a handle is only created on lookup and is passed back to {@link MerkleTree#updateLeaves}
+ * after its value has been changed, or built by {@link #ofHash} for data that is not a string.
+ */
 @EqualsAndHashCode
 @Getter
 @Setter
 public class MerkleNode {
     private String value;
     private byte[] hash;
-    private MerkleNode left;
-    private MerkleNode right;
-    private MerkleNode parent;
-    private boolean visited;
     private int index = -1;
 
-    protected final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
-
 
     public MerkleNode(String value, byte[] hash, int index) {
         this.value = value;
@@ -29,35 +26,20 @@ public class MerkleNode {
         this.index = index;
     }
 
-    public MerkleNode(byte[] hash, MerkleNode left, MerkleNode right) {
-        this.hash = hash;
-        this.left = left;
-        this.right = right;
-        left.setParent(this);
-        right.setParent(this);
-    }
-
-    public boolean isLeaf() {
-        return left == null && right == null;
-
-    }
-
-    public void updateHash() {
-        if (isLeaf()) {
-            hash = HashUtil.hash_sha_256(value.getBytes(StandardCharsets.UTF_8));
-        } else {
-            hash = HashUtil.combineHash(left.getHash(), right.getHash());
-        }
+    /**
+     * Handle that sets the leaf at {@code index} to a precomputed leaf hash, e.g. from
+     * {@link MerkleTree#hashLeaf(byte[])}, instead of hashing a value.
+     */
+    public static MerkleNode ofHash(int index, byte[] hash) {
+        return new MerkleNode(null, hash, index);
     }
 
     @Override
     public String toString() {
         return "MerkleNode{"
                 + "value = " + value
-               /* + " left child hash =" + (left != null ? HexFormat.of().formatHex(left.getHash()) : "null")
-                + " right child hash =" + (right != null ? HexFormat.of().formatHex(right.getHash()) : "null")*/
                 + " hash="
-                + HexFormat.of().formatHex(this.hash)
+                + (hash == null ? null : HexFormat.of().formatHex(hash))
                 + '}';
     }
 }
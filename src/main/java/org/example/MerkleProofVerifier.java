@@ -0,0 +1,93 @@
+package org.example;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Verifies proofs without a tree: only the leaf, its position, the leaf count of the tree, the
+ * proof and the trusted root are needed, so verification can run anywhere the root is known. The
+ * position is checked too: it must lie inside the tree, the proof must have one step per level,
+ * and the direction of every step must match the corresponding bit of the leaf index.
+ */
+public final class MerkleProofVerifier {
+
+    private static final int BULK_THRESHOLD = 256;
+
+    private MerkleProofVerifier() {
+    }
+
+    public static boolean verify(String data, int leafIndex, int leafCount, List<MerkleProof> proof, byte[] expectedRoot,
+                                 HashFunction hashFunction) {
+        byte[] hash = new byte[hashFunction.digestLength()];
+        hashFunction.hashUtf8(data, hash, 0);
+        return verifyInPlace(hash, leafIndex, leafCount, proof, expectedRoot, hashFunction);
+    }
+
+    public static boolean verify(byte[] leafHash, int leafIndex, int leafCount, List<MerkleProof> proof, byte[] expectedRoot,
+                                 HashFunction hashFunction) {
+        if (leafHash.length != hashFunction.digestLength()) return false;
+        return verifyInPlace(leafHash.clone(), leafIndex, leafCount, proof, expectedRoot, hashFunction);
+    }
+
+    /**
+     * Verifies many proofs against the root of one tree of {@code leafCount} leaves, spreading them
+     * over {@code executor} in chunks ({@code null} verifies on the calling thread). Entry {@code i}
+     * of the result tells whether {@code proofs.get(i)} proves {@code leafHashes.get(i)} at
+     * {@code leafIndices[i]}.
+     */
+    public static boolean[] verifyAll(List<byte[]> leafHashes, int[] leafIndices, int leafCount, List<List<MerkleProof>> proofs,
+                                      byte[] expectedRoot, HashFunction hashFunction, Executor executor) {
+        int count = leafIndices.length;
+        if (leafHashes.size() != count || proofs.size() != count) {
+            throw new IllegalArgumentException("leaf hashes, indices and proofs must have the same length");
+        }
+        boolean[] valid = new boolean[count];
+        int length = hashFunction.digestLength();
+        RangeTasks.run(count, BULK_THRESHOLD, executor, (from, to) -> {
+            byte[] hash = new byte[length];
+            for (int i = from; i < to; i++) {
+                byte[] leafHash = leafHashes.get(i);
+                if (leafHash.length != length) continue;
+                System.arraycopy(leafHash, 0, hash, 0, length);
+                valid[i] = verifyInPlace(hash, leafIndices[i], leafCount, proofs.get(i), expectedRoot, hashFunction);
+            }
+        });
+        return valid;
+    }
+
+    /**
+     * Folds {@code proof} into {@code hash} without checking positions, leaving the computed root in {@code hash}.
+     */
+    static void fold(byte[] hash, List<MerkleProof> proof, HashFunction hashFunction) {
+        for (MerkleProof step : proof) {
+            if (step.direction == MerkleProof.Direction.LEFT) {
+                hashFunction.combine(step.getHash(), 0, hash, 0, hash, 0);
+            } else {
+                hashFunction.combine(hash, 0, step.getHash(), 0, hash, 0);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of proof steps from a leaf to the root of a tree of {@code leafCount} leaves.
+     */
+    static int depth(int leafCount) {
+        return leafCount <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(leafCount - 1);
+    }
+
+    private static boolean verifyInPlace(byte[] hash, int leafIndex, int leafCount, List<MerkleProof> proof,
+                                         byte[] expectedRoot, HashFunction hashFunction) {
+        // past the last leaf, a node combined with itself would prove positions that do not exist
+        if (leafIndex < 0 || leafIndex >= leafCount || proof.size() != depth(leafCount)) return false;
+        int index = leafIndex;
+        for (MerkleProof step : proof) {
+            // an even node has its sibling on the right, including the last node combined with itself
+            MerkleProof.Direction expected = (index & 1) == 0 ? MerkleProof.Direction.RIGHT : MerkleProof.Direction.LEFT;
+            if (step.direction != expected || step.getHash().length != hash.length) return false;
+            index >>>= 1;
+        }
+        fold(hash, proof, hashFunction);
+        return Arrays.equals(hash, expectedRoot);
+    }
+}
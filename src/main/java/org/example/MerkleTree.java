@@ -3,246 +3,909 @@ package org.example;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.nio.charset.StandardCharsets;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 import java.security.InvalidParameterException;
 import java.util.*;
-import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.example.MerkleTreeMetrics.Operation;
+
+/**
+ * Merkle tree whose hashes are kept level by level in flat {@link HashStore}s.
+ * Node {@code i} of a level has its children at {@code 2i} and {@code 2i + 1} of the level below;
+ * an odd node at the end of a level is combined with itself.
+ * <p>
+ * With {@link MerkleTreeConfig#getArity()} set to 4, 8 or 16 a node hashes the concatenation of
+ * its {@code k} children at {@code ki ... ki + k - 1} instead, and the last child of a level is
+ * repeated to fill an incomplete group, which for {@code k = 2} is the rule above. Such trees are
+ * proven with {@link GroupProof}s.
+ * <p>
+ * A tree lives on the heap, off the heap with {@link MerkleTreeConfig#isOffHeap()}, or in a file
+ * written by {@link #save} and mapped back by {@link #open}; off-heap and mapped trees must be
+ * closed, and a mapped tree holds no leaf values. Leaves are built from strings, raw bytes
+ * or precomputed leaf hashes; only the hashes are required, and string values are kept only when
+ * {@link MerkleTreeConfig#isRetainValues()} is set.
+ * <p>
+ * Updates of a heap tree are serialized and each publishes a new {@link MerkleTreeSnapshot} by
+ * copying only the pages they touch. Reads run against the latest published version without
+ * locking, and {@link #snapshot()} pins a version for as long as the caller needs it. Each
+ * version carries its own leaf index and values, so lookups by value are lock-free too. Off-heap
+ * and mapped trees update their stores in place, so their reads take the read lock instead.
+ */
+public class MerkleTree implements TreeHashSource, Closeable {
 
-public class MerkleTree {
-
-    private static final Function<String, byte[]> stringToByte = a -> a.getBytes(StandardCharsets.UTF_8);
     private static final Logger logger = LogManager.getLogger(MerkleTree.class);
-    private final MerkleNode root;
-    private final List<MerkleNode> leaves = new ArrayList<>();
-    private List<MerkleNode> conflictNodes = new ArrayList<>();
-
-    private HashFunction hashFunction;
+    // levels[0] holds the leaf hashes, the last level holds the root
+    private HashStore[] levels;
+    // leaf values, null when they are not retained; changed by writers only, and published
+    // with every version of a heap tree
+    private final LeafValues values;
+    // index of the leaf level, kept like the values; an off-heap or mapped tree builds it on
+    // the first lookup by value
+    private volatile LeafIndex leafIndex;
+    // guards that lazy build and the snapshots readers take of an off-heap or mapped tree
+    private final Object indexLock = new Object();
+    // closed with an off-heap or mapped tree; such trees update in place, so their reads lock
+    private final Closeable resource;
+    private final boolean fixedSize;
+    private final boolean offHeap;
+    // latest published version
+    private volatile MerkleTreeSnapshot current;
+    // null unless configured
+    private final ProofCache proofCache;
+
+    private final HashFunction hashFunction;
+    private final int hashLength;
+    private final int parallelThreshold;
+    private final Executor executor;
+    private final MerkleTreeMetrics metrics;
+    private final int arity;
+    // log2 of the arity: node i of a level covers nodes [i << shift, (i + 1) << shift) below it
+    private final int shift;
 
     protected final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
 
     public MerkleTree(List<String> data) {
-        if (data == null || data.isEmpty()) throw new InvalidParameterException("Data list not expected to be empty!");
-        this.root = buildTree(data);
-        logger.info("new merkle tree root is {}", getRootHash());
+        this(data, MerkleTreeConfig.defaults());
     }
 
     public MerkleTree(List<String> data, HashFunction hashFunction) {
+        this(data, MerkleTreeConfig.builder().hashFunction(hashFunction).build());
+    }
+
+    /**
+     * Builds a tree with the given options. With an executor configured, leaves and every
+     * level above them are hashed in parallel chunks; the root is identical to a sequential build.
+     */
+    public MerkleTree(List<String> data, MerkleTreeConfig config) {
+        this(data, data, (i, out) -> config.getHashFunction().hashUtf8(data.get(i), out, 0), false, config);
+    }
+
+    /**
+     * Builds a tree over the leaves written by {@code hasher}; {@code values} are the string
+     * values to retain, if any, and {@code prehashed} tells that the hasher only copies hashes.
+     */
+    private MerkleTree(List<?> data, List<String> values, LeafHasher hasher, boolean prehashed, MerkleTreeConfig config) {
         if (data == null || data.isEmpty()) throw new InvalidParameterException("Data list not expected to be empty!");
-        this.root = buildTree(data);
-        logger.info("new merkle tree root is {}", getRootHash());
-        this.hashFunction = hashFunction;
+        long start = System.nanoTime();
+        this.hashFunction = config.getHashFunction();
+        this.hashLength = hashFunction.digestLength();
+        this.parallelThreshold = config.getParallelThreshold();
+        this.executor = config.getExecutor();
+        this.metrics = config.getMetrics();
+        this.arity = checkArity(config.getArity());
+        this.shift = Integer.numberOfTrailingZeros(arity);
+        this.proofCache = newProofCache(config);
+        this.offHeap = config.isOffHeap();
+        this.fixedSize = false;
+        this.values = config.isRetainValues() && values != null ? new LeafValues(values) : null;
+        this.levels = buildTree(hashLeaves(data.size(), hasher), config);
+        // an off-heap tree only builds the index on the heap once it is looked up by value
+        this.leafIndex = offHeap ? null : new LeafIndex(levels[0]);
+        this.resource = offHeap ? this::releaseLevels : null;
+        publish();
+        long hashes = prehashed ? 0 : data.size();
+        for (int level = 1; level < levels.length; level++) {
+            hashes += levels[level].size();
+        }
+        metrics.recordHashes(Operation.BUILD, hashes);
+        metrics.recordLatency(Operation.BUILD, System.nanoTime() - start);
+        logger.info("built merkle tree of {} leaves", data.size());
+        if (logger.isDebugEnabled()) {
+            logger.debug("merkle tree of data {} has root {}", data, HexFormat.of().formatHex(getRootHash()));
+        }
+    }
 
+    /**
+     * Builds a tree whose leaves are the hashes of the given byte arrays.
+     */
+    public static MerkleTree ofBytes(List<byte[]> data, MerkleTreeConfig config) {
+        HashFunction hashFunction = config.getHashFunction();
+        return new MerkleTree(data, null, (i, out) -> {
+            byte[] bytes = data.get(i);
+            hashFunction.hash(bytes, 0, bytes.length, out, 0);
+        }, false, config);
     }
 
+    /**
+     * Builds a tree whose leaves are the hashes of the remaining bytes of each buffer; buffer
+     * positions are left unchanged.
+     */
+    public static MerkleTree ofBuffers(List<ByteBuffer> data, MerkleTreeConfig config) {
+        HashFunction hashFunction = config.getHashFunction();
+        return new MerkleTree(data, null, (i, out) -> hashFunction.hash(data.get(i), out, 0), false, config);
+    }
 
-    private MerkleNode buildTree(List<String> data) {
-        logger.info("build merkle tree by data: {}", data);
-        for (int i = 0; i < data.size(); i++) {
-            String value = data.get(i);
-            MerkleNode leaf = new MerkleNode(value, HashUtil.hash_sha_256(stringToByte.apply(value)), i);
-            leaves.add(leaf);
-        }
-        if (leaves.size() == 1) {
-            return leaves.get(0);
+    /**
+     * Builds a tree over leaf hashes computed elsewhere; no leaf is hashed again.
+     */
+    public static MerkleTree ofLeafHashes(List<byte[]> leafHashes, MerkleTreeConfig config) {
+        int length = config.getHashFunction().digestLength();
+        return new MerkleTree(leafHashes, null, (i, out) -> {
+            byte[] hash = leafHashes.get(i);
+            if (hash.length != length) throw new InvalidParameterException("Leaf hash " + i + " is not " + length + " bytes long");
+            System.arraycopy(hash, 0, out, 0, length);
+        }, true, config);
+    }
+
+    MerkleTree(HashStore[] levels, MerkleTreeConfig config, Closeable resource) {
+        this.hashFunction = config.getHashFunction();
+        this.hashLength = hashFunction.digestLength();
+        this.parallelThreshold = config.getParallelThreshold();
+        this.executor = config.getExecutor();
+        this.metrics = config.getMetrics();
+        this.arity = checkArity(config.getArity());
+        this.shift = Integer.numberOfTrailingZeros(arity);
+        this.proofCache = newProofCache(config);
+        this.offHeap = false;
+        this.fixedSize = true;
+        this.values = null;
+        this.levels = levels;
+        this.resource = resource;
+        publish();
+    }
+
+    /**
+     * Memory-maps a tree written by {@link #save}. Opening costs no hashing, proofs read sibling
+     * hashes straight from the mapped pages, and updates write changed hashes back into the file.
+     * The leaf count of a mapped tree is fixed.
+     */
+    public static MerkleTree open(Path file, MerkleTreeConfig config) throws IOException {
+        return MerkleTreeFile.open(file, config, true);
+    }
+
+    public static MerkleTree open(Path file) throws IOException {
+        return open(file, MerkleTreeConfig.defaults());
+    }
+
+    /**
+     * Writes every level hash of this tree to {@code file} in the format read by {@link #open}.
+     */
+    public void save(Path file) throws IOException {
+        if (resource == null) {
+            current.save(file);
+            return;
         }
-        List<MerkleNode> nodes = leaves;
-        while (nodes.size() > 1) {
-            List<MerkleNode> nextLevel = new ArrayList<>();
-            for (int i = 0; i < nodes.size(); i += 2) {
-                MerkleNode left = nodes.get(i);
-                MerkleNode right = (i + 1 < nodes.size()) ? nodes.get(i + 1) : left;
-                MerkleNode parent = new MerkleNode(HashUtil.combineHash(left.getHash(), right.getHash()), left, right);
-                nextLevel.add(parent);
-            }
-            nodes = nextLevel;
+        try {
+            lock.readLock().lock();
+            current.save(file);
+        } finally {
+            lock.readLock().unlock();
         }
-        logger.info("build merkle tree finish.");
-        return nodes.get(0); // root node
     }
 
-
-    public List<MerkleProof> getMerkleProof(String targetData) {
+    /**
+     * Returns the latest version of the tree, which later updates leave untouched. For a heap tree
+     * this is free; an off-heap or mapped tree copies its hashes to the heap.
+     */
+    public MerkleTreeSnapshot snapshot() {
+        if (resource == null) return current;
         try {
             lock.readLock().lock();
-            logger.info("get Merkle Proofs of data: {}", targetData);
-            List<MerkleProof> proofs = new ArrayList<>();
-            MerkleNode leaf = findLeaf(targetData);
-            if (leaf == null) {
-                return proofs; // Data not found in the tree
-            }
-
-            MerkleNode currentNode = leaf;
-            while (currentNode.getParent() != null) {
-                MerkleNode parent = currentNode.getParent();
-
-                MerkleProof.Direction direction = (currentNode == parent.getLeft()) ? MerkleProof.Direction.RIGHT : MerkleProof.Direction.LEFT;
-                MerkleNode sibling = direction == MerkleProof.Direction.RIGHT ? parent.getRight() : parent.getLeft();
-                try {
-                    sibling.lock.readLock().lock();
-                    proofs.add(new MerkleProof(sibling.getHash(), direction));
-                } finally {
-                    sibling.lock.readLock().unlock();
-                }
-                currentNode = parent;
+            HashStore[] copy = new HashStore[levels.length];
+            for (int level = 0; level < levels.length; level++) {
+                copy[level] = levels[level].snapshot();
             }
-            logger.info("Merkle Proofs of data are : {}", proofs);
-            return proofs;
+            synchronized (indexLock) {
+                LeafIndex index = leafIndex == null ? null : leafIndex.snapshot(copy[0]);
+                return new MerkleTreeSnapshot(copy, hashFunction, arity, current.getVersion(),
+                        index, values == null ? null : values.snapshot());
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
 
+    /**
+     * Returns whether {@link #snapshot()} copies the hashes, as it does for off-heap and mapped trees.
+     */
+    boolean snapshotCopies() {
+        return resource != null;
+    }
+
+    /**
+     * Makes the current level hashes the latest version. Called by writers once an update is complete.
+     */
+    private void publish() {
+        HashStore[] version = levels.clone();
+        if (resource != null) {
+            // read under the read lock, so the live index and values serve as this version's
+            current = new MerkleTreeSnapshot(version, hashFunction, arity, nextVersion(), null, values);
+            return;
+        }
+        for (int level = 0; level < version.length; level++) {
+            version[level] = levels[level].snapshot();
+        }
+        current = new MerkleTreeSnapshot(version, hashFunction, arity, nextVersion(),
+                leafIndex.snapshot(version[0]), values == null ? null : values.snapshot());
+    }
+
+    /**
+     * Returns the number of the latest version without copying it, so callers can tell whether the
+     * tree changed since they last read it.
+     */
+    long version() {
+        return current.getVersion();
+    }
+
+    private long nextVersion() {
+        return current == null ? 0 : current.getVersion() + 1;
+    }
+
+    private ProofCache newProofCache(MerkleTreeConfig config) {
+        if (config.getProofCacheSize() <= 0 || arity != 2) return null;
+        return new ProofCache(config.getProofCacheSize(), config.getPinnedLevels(), hashLength, 0);
+    }
+
+    /**
+     * Returns the proof cache with its hit and miss counts, or null when no cache is configured.
+     */
+    public ProofCache getProofCache() {
+        return proofCache;
+    }
+
+    /**
+     * Runs {@code reader} against the latest version, under the read lock for a mapped tree.
+     */
+    <T> T read(Function<MerkleTreeSnapshot, T> reader) {
+        if (resource == null) return reader.apply(current);
+        try {
+            lockRead(null);
+            return reader.apply(current);
         } finally {
             lock.readLock().unlock();
         }
     }
 
-    public boolean verifyMerkleProof(String data, List<MerkleProof> proofList) {
+    /**
+     * Like {@link #read(Function)}, recording the latency of {@code operation}.
+     */
+    private <T> T read(Operation operation, Function<MerkleTreeSnapshot, T> reader) {
+        long start = System.nanoTime();
+        try {
+            if (resource == null) return reader.apply(current);
+            try {
+                lockRead(operation);
+                return reader.apply(current);
+            } finally {
+                lock.readLock().unlock();
+            }
+        } finally {
+            metrics.recordLatency(operation, System.nanoTime() - start);
+        }
+    }
+
+    private void lockRead(Operation operation) {
+        long start = System.nanoTime();
+        lock.readLock().lock();
+        if (operation != null) metrics.recordLockWait(operation, System.nanoTime() - start);
+    }
+
+    private void lockForUpdate() {
+        long start = System.nanoTime();
+        lock.writeLock().lock();
+        metrics.recordLockWait(Operation.UPDATE, System.nanoTime() - start);
+    }
+
+    /**
+     * Makes every hash written so far durable for a tree opened from a file.
+     */
+    public void flush() {
         try {
             lock.readLock().lock();
-            logger.info("verify Merkle Proof of data: {} with proofs {}", data, proofList);
-            MerkleNode leaf = findLeaf(data);
-            if (leaf == null) {
-                logger.warn("data {} not exist in merkle tree {}", data, this.root);
-                return false; // Data not found in the tree
-            }
-            byte[] hash = leaf.getHash();
-            for (MerkleProof proof : proofList) {
-                MerkleNode parent = (leaf.getParent() != null) ? leaf.getParent() : null;
-                if (parent == null) return false;
-
-                if (proof.direction == MerkleProof.Direction.LEFT) {
-                    hash = HashUtil.combineHash(proof.getHash(), hash);
-                } else {
-                    hash = HashUtil.combineHash(hash, proof.getHash());
-                }
+            for (HashStore level : levels) {
+                level.flush();
             }
-            return Arrays.equals(root.getHash(), hash); // Merkle path is valid
         } finally {
             lock.readLock().unlock();
         }
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        if (resource != null) {
+            try {
+                lock.writeLock().lock();
+                resource.close();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private void releaseLevels() {
+        for (HashStore level : levels) {
+            level.release();
+        }
+    }
+
+    /**
+     * Returns the positions of the leaves of {@code version} whose hash is {@code hash}, from the
+     * leaf index of that version.
+     */
+    private int[] leavesWithHash(Operation operation, MerkleTreeSnapshot version, byte[] hash) {
+        LeafIndex index = indexOf(operation, version);
+        return index == null ? version.leavesWithHash(hash) : index.findAll(hash);
+    }
+
+    /**
+     * Returns the leaf index of {@code version}, or null for a copy taken before the index of an
+     * off-heap or mapped tree was built; such versions are scanned. The latest version of an
+     * off-heap or mapped tree uses the live index, built here on first use; its readers hold the
+     * read lock, so no writer changes it meanwhile. The wait for another reader building it is
+     * recorded against {@code operation}.
+     */
+    private LeafIndex indexOf(Operation operation, MerkleTreeSnapshot version) {
+        if (version.leafIndex() != null || resource == null || version != current) return version.leafIndex();
+        LeafIndex index = leafIndex;
+        if (index != null) return index;
+        long start = System.nanoTime();
+        synchronized (indexLock) {
+            metrics.recordLockWait(operation, System.nanoTime() - start);
+            if (leafIndex == null) leafIndex = new LeafIndex(levels[0]);
+            return leafIndex;
+        }
+    }
+
+    private int firstLeafWithHash(Operation operation, MerkleTreeSnapshot version, byte[] hash) {
+        int[] found = leavesWithHash(operation, version, hash);
+        return found.length == 0 ? -1 : found[0];
+    }
+
+    /**
+     * Returns the first leaf of {@code version} holding each of {@code hashes}, or -1, looking all
+     * of them up in the leaf index of that version on behalf of {@code operation}.
+     */
+    int[] firstLeavesWithHashes(Operation operation, MerkleTreeSnapshot version, List<byte[]> hashes) {
+        LeafIndex index = indexOf(operation, version);
+        if (index == null) return version.firstLeavesWithHashes(hashes);
+        int[] first = new int[hashes.size()];
+        for (int j = 0; j < first.length; j++) {
+            first[j] = index.findFirst(hashes.get(j));
+        }
+        return first;
+    }
+
+
+    /**
+     * Writes the hash of leaf {@code index} into {@code out}.
+     */
+    @FunctionalInterface
+    private interface LeafHasher {
+        void hash(int index, byte[] out);
+    }
+
+    private HashStore hashLeaves(int count, LeafHasher hasher) {
+        HashStore leaves = newStore(count);
+        RangeTasks.run(count, parallelThreshold, executor, (from, to) -> {
+            byte[] hash = new byte[hashLength];
+            for (int i = from; i < to; i++) {
+                hasher.hash(i, hash);
+                leaves.write(i, hash, 0);
+            }
+        });
+        return leaves;
+    }
+
+    private HashStore[] buildTree(HashStore leaves, MerkleTreeConfig config) {
+        List<HashStore> tree = new ArrayList<>();
+        tree.add(leaves);
+        HashStore nodes = leaves;
+        while (nodes.size() > 1) {
+            HashStore children = nodes;
+            HashStore nextLevel = newStore(parentCount(children.size()));
+            RangeTasks.run(nextLevel.size(), config.getParallelThreshold(), config.getExecutor(), (from, to) -> {
+                byte[] group = newGroup();
+                for (int i = from; i < to; i++) {
+                    rehashNode(children, nextLevel, i, group);
+                }
+            });
+            tree.add(nextLevel);
+            nodes = nextLevel;
+        }
+        return tree.toArray(new HashStore[0]);
+    }
 
+
+    public List<MerkleProof> getMerkleProof(String targetData) {
+        return read(Operation.PROOF, version -> {
+            metrics.recordHashes(Operation.PROOF, 1);
+            int index = firstLeafWithHash(Operation.PROOF, version, leafHash(targetData));
+            if (index < 0) {
+                logger.debug("no leaf holds data {}", targetData);
+                return new ArrayList<>(); // Data not found in the tree
+            }
+            List<MerkleProof> proofs = proofOf(version, index);
+            logger.debug("Merkle Proofs of data {} are : {}", targetData, proofs);
+            return proofs;
+        });
+    }
+
+    /**
+     * Returns the proof of the leaf at {@code leafIndex}; the cost depends only on the tree height.
+     */
+    public List<MerkleProof> getMerkleProof(int leafIndex) {
+        return read(Operation.PROOF, version -> proofOf(version, leafIndex));
+    }
+
+    /**
+     * Returns the proof of the leaf at {@code leafIndex} in {@code version}, through the proof cache if any.
+     */
+    List<MerkleProof> proofOf(MerkleTreeSnapshot version, int leafIndex) {
+        return proofCache == null ? version.getMerkleProof(leafIndex) : proofCache.getMerkleProof(version, leafIndex);
+    }
+
+    /**
+     * Writes the proof of the leaf at {@code leafIndex} to {@code out} in the {@link EncodedMerkleProof}
+     * format, copying sibling hashes straight from the level stores.
+     */
+    public void writeMerkleProof(int leafIndex, ByteBuffer out) {
+        read(Operation.PROOF, version -> {
+            version.writeMerkleProof(leafIndex, out);
+            return null;
+        });
+    }
+
+    /**
+     * Returns one proof for all the given leaf positions, holding each needed sibling hash once.
+     */
+    public MultiProof getMultiProof(int... leafIndices) {
+        return read(Operation.PROOF, version -> version.getMultiProof(leafIndices));
+    }
+
+    /**
+     * Returns one proof for the first leaf holding each of {@code data}; values that are not
+     * in the tree are left out of {@link MultiProof#getLeafIndices()}.
+     */
+    public MultiProof getMultiProof(Collection<String> data) {
+        return read(Operation.PROOF, version -> {
+            metrics.recordHashes(Operation.PROOF, data.size());
+            List<byte[]> hashes = data.stream().map(this::leafHash).collect(Collectors.toList());
+            int[] indices = Arrays.stream(firstLeavesWithHashes(Operation.PROOF, version, hashes)).filter(i -> i >= 0).toArray();
+            return version.getMultiProof(indices);
+        });
+    }
+
+    /**
+     * Returns the proof of the leaf at {@code leafIndex} as sibling groups; works for every arity.
+     */
+    public GroupProof getGroupProof(int leafIndex) {
+        return read(Operation.PROOF, version -> version.getGroupProof(leafIndex));
+    }
+
+    public boolean verifyGroupProof(String data, GroupProof proof) {
+        metrics.recordHashes(Operation.VERIFY, 1 + proof.depth());
+        return read(Operation.VERIFY, version -> version.verifyGroupProof(data, proof));
+    }
+
+    @Override
+    public int arity() {
+        return arity;
+    }
+
+    /**
+     * Verifies {@code proof} against this tree's root; {@code data} holds the value of every leaf
+     * in {@link MultiProof#getLeafIndices()}, in that order.
+     */
+    public boolean verifyMultiProof(List<String> data, MultiProof proof) {
+        return read(Operation.VERIFY, version -> version.verifyMultiProof(data, proof));
+    }
+
+    public boolean verifyMerkleProof(String data, List<MerkleProof> proofList) {
+        logger.debug("verify Merkle Proof of data: {} with proofs {}", data, proofList);
+        metrics.recordHashes(Operation.VERIFY, 1 + proofList.size());
+        return read(Operation.VERIFY, version -> version.verifyMerkleProof(data, proofList));
     }
 
     public MerkleNode findLeaf(String data) {
-        return this.leaves.stream()
-                .filter(leaf -> Objects.equals(leaf.getValue(), data))
-                .findFirst()
-                .orElse(null);
+        byte[] hash = leafHash(data);
+        int index = read(Operation.LOOKUP, version -> firstLeafWithHash(Operation.LOOKUP, version, hash));
+        return index < 0 ? null : new MerkleNode(data, hash, index);
+    }
+
+    /**
+     * Returns the positions of every leaf holding {@code data}, in ascending order.
+     */
+    public int[] findLeafIndices(String data) {
+        return read(Operation.LOOKUP, version -> leavesWithHash(Operation.LOOKUP, version, leafHash(data)));
+    }
+
+    /**
+     * Returns the value of the leaf at {@code leafIndex}, or null when values are not retained or
+     * the leaf was set from bytes or a hash.
+     */
+    public String getValue(int leafIndex) {
+        return read(version -> version.getValue(leafIndex));
+    }
+
+    /**
+     * Hashes {@code data} the way this tree hashes a leaf, for {@link MerkleNode#ofHash}.
+     */
+    public byte[] hashLeaf(byte[] data) {
+        byte[] hash = new byte[hashLength];
+        hashFunction.hash(data, 0, data.length, hash, 0);
+        return hash;
+    }
+
+    /**
+     * Hashes the remaining bytes of {@code data} the way this tree hashes a leaf, for
+     * {@link MerkleNode#ofHash}; the buffer position is left unchanged.
+     */
+    public byte[] hashLeaf(ByteBuffer data) {
+        byte[] hash = new byte[hashLength];
+        hashFunction.hash(data, hash, 0);
+        return hash;
     }
 
+    /**
+     * Applies the new values of {@code modifiedLeaves}. The union of their paths to the root is
+     * recomputed bottom-up, every dirty ancestor exactly once. With an executor the leaf hashes
+     * and each dirty level are computed in parallel on it; the executor is only borrowed and
+     * stays usable afterwards. A leaf without a value but with a hash, see {@link MerkleNode#ofHash},
+     * is written as is without hashing.
+     */
     public void updateLeaves(List<MerkleNode> modifiedLeaves, ExecutorService executors) {
+        long start = System.nanoTime();
         try {
-            lock.writeLock().lock();
-            logger.info("start to update leaves {}", modifiedLeaves);
+            lockForUpdate();
+            logger.debug("start to update leaves {}", modifiedLeaves);
             ArrayList<MerkleNode> leavesToUpdate = new ArrayList<>();
             for (MerkleNode leaf : modifiedLeaves) {
-                if (this.leaves.contains(leaf)) {
+                if (leaf.getIndex() >= 0 && leaf.getIndex() < levels[0].size()) {
                     leavesToUpdate.add(leaf);
                 }
             }
 
             if (leavesToUpdate.isEmpty()) {
-                logger.info("no leaves to update exist in current merkle tree");
+                logger.debug("no leaves to update exist in current merkle tree");
                 return;
             }
-            //update leaves by synchro
-            if (executors == null) {
-                for (MerkleNode leaf : leavesToUpdate) {
-                    updateNode(leaf);
+            long leafHashes = leavesToUpdate.stream().filter(leaf -> leaf.getValue() != null).count();
+            RangeTasks.run(leavesToUpdate.size(), parallelThreshold, executors, (from, to) -> {
+                for (int i = from; i < to; i++) {
+                    MerkleNode leaf = leavesToUpdate.get(i);
+                    if (leaf.getValue() != null) {
+                        leaf.setHash(leafHash(leaf.getValue()));
+                    } else if (leaf.getHash() == null || leaf.getHash().length != hashLength) {
+                        throw new InvalidParameterException("Leaf " + leaf.getIndex() + " has neither a value nor a " + hashLength + "-byte hash");
+                    }
                 }
-                return;
+            });
+
+            byte[] oldHash = new byte[hashLength];
+            for (MerkleNode leaf : leavesToUpdate) {
+                if (values != null) values.set(leaf.getIndex(), leaf.getValue());
+                levels[0].read(leaf.getIndex(), oldHash, 0);
+                levels[0].write(leaf.getIndex(), leaf.getHash(), 0);
+                if (leafIndex != null) leafIndex.reindex(leaf.getIndex(), oldHash);
+            }
+            int[] dirty = leavesToUpdate.stream().mapToInt(MerkleNode::getIndex).toArray();
+            int[][] dirtyNodes = updateDirtyLevels(dirty, executors);
+            long nodes = 0;
+            for (int level = 1; level < dirtyNodes.length; level++) {
+                nodes += dirtyNodes[level].length;
             }
+            if (proofCache != null) proofCache.update(nextVersion(), dirtyNodes, levels[0].size());
+            publish();
+            metrics.recordDirtyNodes(dirty.length + nodes);
+            metrics.recordHashes(Operation.UPDATE, leafHashes + nodes);
+            logger.info("updated {} leaves and {} nodes", dirty.length, nodes);
+        } finally {
+            lock.writeLock().unlock();
+            metrics.recordLatency(Operation.UPDATE, System.nanoTime() - start);
+        }
+    }
 
-            leavesToUpdate.sort(Comparator.comparingInt(MerkleNode::getIndex));
-            this.conflictNodes = findConflictNodes(leavesToUpdate);
+    /**
+     * Appends leaves to the end of the tree. Only the new leaves, the nodes above them and the
+     * right spine of the existing tree are hashed, and the root equals a build over all values.
+     */
+    public void append(String... newValues) {
+        appendAll(Arrays.asList(newValues));
+    }
 
-            for (int i = 0; i < leavesToUpdate.size(); i++) {
-                final int index = i;
-                CompletableFuture.runAsync(() -> updateNode(leavesToUpdate.get(index)), executors);
-                // Process the batch of data
+    public void appendAll(List<String> newValues) {
+        appendLeaves(newValues.size(), newValues, (i, out) -> hashFunction.hashUtf8(newValues.get(i), out, 0));
+    }
+
+    /**
+     * Appends leaves whose hashes were computed elsewhere; no leaf is hashed again.
+     */
+    public void appendLeafHashes(List<byte[]> leafHashes) {
+        appendLeaves(leafHashes.size(), null, (i, out) -> {
+            byte[] hash = leafHashes.get(i);
+            if (hash.length != hashLength) throw new InvalidParameterException("Leaf hash " + i + " is not " + hashLength + " bytes long");
+            System.arraycopy(hash, 0, out, 0, hashLength);
+        });
+    }
+
+    private void appendLeaves(int count, List<String> newValues, LeafHasher hasher) {
+        if (count == 0) return;
+        checkResizable();
+        long start = System.nanoTime();
+        try {
+            lockForUpdate();
+            int oldSize = levels[0].size();
+            int newSize = Math.addExact(oldSize, count);
+            resizeLevels(newSize);
+            HashStore leaves = levels[0];
+            RangeTasks.run(count, parallelThreshold, executor, (from, to) -> {
+                byte[] hash = new byte[hashLength];
+                for (int i = from; i < to; i++) {
+                    hasher.hash(i, hash);
+                    leaves.write(oldSize + i, hash, 0);
+                }
+            });
+            if (leafIndex != null) {
+                for (int i = oldSize; i < newSize; i++) {
+                    leafIndex.add(i);
+                }
+            }
+            if (values != null) {
+                if (newValues != null) values.addAll(newValues);
+                else values.resize(newSize);
+            }
+            // node j of level l depends only on leaves [j * k^l, (j + 1) * k^l), so every node from
+            // oldSize / k^l onwards may have changed; the ones before it are untouched
+            long dirtyNodes = 0;
+            for (int level = 1; level < levels.length; level++) {
+                HashStore children = levels[level - 1];
+                HashStore nodes = levels[level];
+                int firstDirty = oldSize >>> (level * shift);
+                dirtyNodes += nodes.size() - firstDirty;
+                RangeTasks.run(nodes.size() - firstDirty, parallelThreshold, executor, (from, to) -> {
+                    byte[] group = newGroup();
+                    for (int i = firstDirty + from; i < firstDirty + to; i++) {
+                        rehashNode(children, nodes, i, group);
+                    }
+                });
             }
+            if (proofCache != null) proofCache.clear(nextVersion());
+            publish();
+            metrics.recordDirtyNodes(count + dirtyNodes);
+            metrics.recordHashes(Operation.UPDATE, (newValues != null ? count : 0) + dirtyNodes);
+            logger.info("appended {} leaves", count);
+        } finally {
+            lock.writeLock().unlock();
+            metrics.recordLatency(Operation.UPDATE, System.nanoTime() - start);
+        }
+    }
 
-            executors.shutdown();
-            while (!executors.isTerminated()) {
+    /**
+     * Drops every leaf from position {@code newSize} on. Only the new right spine is rehashed.
+     */
+    public void truncate(int newSize) {
+        checkResizable();
+        long start = System.nanoTime();
+        try {
+            lockForUpdate();
+            int oldSize = levels[0].size();
+            if (newSize < 1 || newSize > oldSize) {
+                throw new InvalidParameterException("Tree size must stay between 1 and " + oldSize + ", got " + newSize);
+            }
+            if (newSize == oldSize) return;
+            if (leafIndex != null) {
+                byte[] hash = new byte[hashLength];
+                // from the end, so duplicates leave their posting lists from the back
+                for (int i = oldSize - 1; i >= newSize; i--) {
+                    levels[0].read(i, hash, 0);
+                    leafIndex.remove(i, hash);
+                }
+            }
+            if (values != null) values.resize(newSize);
+            resizeLevels(newSize);
+            byte[] group = newGroup();
+            for (int level = 1; level < levels.length; level++) {
+                rehashNode(levels[level - 1], levels[level], levels[level].size() - 1, group);
             }
-            resetAfterConcurrentTreeUpdate();
+            if (proofCache != null) proofCache.clear(nextVersion());
+            publish();
+            metrics.recordDirtyNodes(levels.length - 1);
+            metrics.recordHashes(Operation.UPDATE, levels.length - 1);
+            logger.info("truncated tree to {} leaves", newSize);
         } finally {
             lock.writeLock().unlock();
-            logger.info("leaves update finish with new root {}", getRootHash());
+            metrics.recordLatency(Operation.UPDATE, System.nanoTime() - start);
         }
     }
 
+    @Override
+    public int size() {
+        return read(MerkleTreeSnapshot::size);
+    }
 
-    private void resetAfterConcurrentTreeUpdate() {
-        conflictNodes.clear();
-        resetVisitedFlag(this.root);
+    private void checkResizable() {
+        if (fixedSize) throw new UnsupportedOperationException("a tree opened from a file has a fixed size");
+    }
 
+    /**
+     * Resizes every level for {@code leafCount} leaves, adding or dropping levels at the top.
+     */
+    private void resizeLevels(int leafCount) {
+        List<HashStore> resized = new ArrayList<>();
+        int size = leafCount;
+        for (int level = 0; ; level++) {
+            if (level < levels.length) {
+                levels[level].resize(size);
+                resized.add(levels[level]);
+            } else {
+                resized.add(newStore(size));
+            }
+            if (size == 1) break;
+            size = parentCount(size);
+        }
+        for (int level = resized.size(); level < levels.length; level++) {
+            levels[level].release();
+        }
+        levels = resized.toArray(new HashStore[0]);
     }
 
-    private void resetVisitedFlag(MerkleNode node) {
-        if (node == null) return;
+    /**
+     * Recomputes the ancestors of the {@code dirty} leaves one level at a time. Each level's
+     * dirty set is the deduplicated parents of the level below, so shared ancestors are hashed
+     * once, and the nodes of a level are independent and hashed in parallel chunks. Returns the
+     * dirty nodes of every level, the leaves first.
+     */
+    private int[][] updateDirtyLevels(int[] dirty, Executor executor) {
+        int[][] dirtyNodes = new int[levels.length][];
+        dirtyNodes[0] = dirty;
+        for (int level = 1; level < levels.length; level++) {
+            int[] parents = parentsOf(dirty, shift);
+            HashStore children = levels[level - 1];
+            HashStore nodes = levels[level];
+            RangeTasks.run(parents.length, parallelThreshold, executor, (from, to) -> {
+                byte[] group = newGroup();
+                for (int i = from; i < to; i++) {
+                    rehashNode(children, nodes, parents[i], group);
+                }
+            });
+            logger.debug("updated {} nodes at level {}", parents.length, level);
+            dirtyNodes[level] = parents;
+            dirty = parents;
+        }
+        return dirtyNodes;
+    }
+
+    /**
+     * Returns the sorted, distinct parents of the node positions in {@code nodes}.
+     */
+    static int[] parentsOf(int[] nodes) {
+        return parentsOf(nodes, 1);
+    }
 
-        node.setVisited(false);
-        resetVisitedFlag(node.getLeft());
-        resetVisitedFlag(node.getRight());
+    /**
+     * Returns the sorted, distinct parents of the node positions in {@code nodes} in a tree of
+     * arity {@code 1 << shift}.
+     */
+    static int[] parentsOf(int[] nodes, int shift) {
+        int[] parents = new int[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            parents[i] = nodes[i] >>> shift;
+        }
+        Arrays.sort(parents);
+        int distinct = 0;
+        for (int i = 0; i < parents.length; i++) {
+            if (distinct == 0 || parents[i] != parents[distinct - 1]) {
+                parents[distinct++] = parents[i];
+            }
+        }
+        return Arrays.copyOf(parents, distinct);
     }
 
-    private List<MerkleNode> findConflictNodes(List<MerkleNode> leaves) {
-        List<MerkleNode> nodes = new ArrayList<>();
-        if (leaves == null || leaves.size() <= 1) {
-            return nodes;
+    /**
+     * Recomputes node {@code index} of {@code parents} from its children; {@code group} is a
+     * scratch buffer from {@link #newGroup()}.
+     */
+    private void rehashNode(HashStore children, HashStore parents, int index, byte[] group) {
+        int first = index << shift;
+        int last = children.size() - 1;
+        for (int j = 0; j < arity; j++) {
+            // the last node of a level fills the rest of an incomplete group
+            children.read(Math.min(first + j, last), group, j * hashLength);
         }
+        hashGroup(hashFunction, arity, group, group, arity * hashLength);
+        parents.write(index, group, arity * hashLength);
+    }
+
+    private HashStore newStore(int size) {
+        return offHeap ? new DirectHashStore(size, hashLength) : new HeapHashStore(size, hashLength);
+    }
 
+    private byte[] newGroup() {
+        return new byte[(arity + 1) * hashLength];
+    }
 
-        for (int j = 0; j < leaves.size() - 1; j++) {
-            MerkleNode node = lowestCommonAncestor(root, leaves.get(j), leaves.get(j + 1));
-            nodes.add(node);
+    /**
+     * Hashes the {@code arity} child hashes at the start of {@code group} into {@code out}, past the
+     * children. Two children are combined, so binary trees keep their exact hashes.
+     */
+    static void hashGroup(HashFunction hashFunction, int arity, byte[] group, byte[] out, int outOffset) {
+        int length = hashFunction.digestLength();
+        if (arity == 2) {
+            hashFunction.combine(group, 0, group, length, out, outOffset);
+        } else {
+            hashFunction.hash(group, 0, arity * length, out, outOffset);
         }
-        return nodes;
     }
 
-    private MerkleNode lowestCommonAncestor(MerkleNode root, MerkleNode p, MerkleNode q) {
-        if (root == null || root == p || root == q) return root;
-        MerkleNode left = lowestCommonAncestor(root.getLeft(), p, q);
-        MerkleNode right = lowestCommonAncestor(root.getRight(), p, q);
-        if (left == null) return right;
-        if (right == null) return left;
-        return root;
+    private int parentCount(int size) {
+        return (size + arity - 1) >>> shift;
     }
 
-    private void updateNode(MerkleNode node) {
-        //update node hash
-        logger.debug("update node {}", node);
-        node.updateHash();
-        //update ancestor tree
-        while (node.getParent() != null) {
-            node = node.getParent();
-            logger.debug("get node parent node {}", node);
-            if (conflictNodes.contains(node)) {
-                logger.debug("node parent {} is conflict node", node);
-                try {
-                    node.lock.writeLock().lock();
-                    logger.debug("get write lock for node {}", node);
-                    if (!node.isVisited()) {
-                        node.setVisited(true);
-                        logger.debug("node {} is not visited yet, set flag to true", node);
-                        break;
-                    } else {
-                        logger.debug("node {} has been visited, update node hash then", node);
-                        node.updateHash();
-                    }
-                } finally {
-                    node.lock.writeLock().unlock();
-                    logger.debug("release write lock for node {}", node);
-                }
-            } else {
-                node.updateHash();
-                logger.debug("update parent hash {}", node);
-            }
+    static int checkArity(int arity) {
+        if (arity < 2 || arity > 16 || Integer.bitCount(arity) != 1) {
+            throw new InvalidParameterException("Arity must be 2, 4, 8 or 16, got " + arity);
         }
+        return arity;
+    }
+
+    private byte[] leafHash(String value) {
+        byte[] hash = new byte[hashLength];
+        hashFunction.hashUtf8(value, hash, 0);
+        return hash;
+    }
+
+    @Override
+    public int hashLength() {
+        return hashLength;
+    }
+
+    /**
+     * Returns the hashes of the given nodes of {@code level}, level 0 being the leaves.
+     */
+    @Override
+    public byte[] nodeHashes(int level, int[] indices) {
+        return read(version -> version.nodeHashes(level, indices));
+    }
+
+    /**
+     * Returns the positions of the leaves that differ from {@code other}; see {@link MerkleTreeDiff}.
+     * This side is compared as one version even if updates land meanwhile.
+     */
+    public int[] diff(TreeHashSource other) {
+        return read(version -> version.diff(other));
+    }
+
+    /**
+     * Returns the positions held by both trees whose leaves differ; see {@link MerkleTreeDiff#diffPrefix}.
+     */
+    public int[] diffPrefix(TreeHashSource other) {
+        return read(version -> MerkleTreeDiff.diffPrefix(version, other));
+    }
+
+    public HashFunction getHashFunction() {
+        return hashFunction;
     }
 
     public byte[] getRootHash() {
-        return root.getHash();
+        return read(MerkleTreeSnapshot::getRootHash);
     }
 }
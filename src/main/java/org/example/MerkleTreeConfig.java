@@ -0,0 +1,82 @@
+package org.example;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Construction options of a {@link MerkleTree}.
+ */
+@Getter
+@Builder(toBuilder = true)
+public class MerkleTreeConfig {
+
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 1 << 14;
+    public static final int DEFAULT_PINNED_LEVELS = 12;
+
+    /**
+     * Hash used for leaves, inner nodes, updates and verification.
+     */
+    @Builder.Default
+    private final HashFunction hashFunction = new Hash_SHA_256();
+
+    /**
+     * Executor used to hash levels in parallel, e.g. {@link java.util.concurrent.ForkJoinPool#commonPool()};
+     * {@code null} builds on the calling thread.
+     */
+    private final Executor executor;
+
+    /**
+     * Levels with fewer nodes than this are always hashed on the calling thread.
+     */
+    @Builder.Default
+    private final int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+
+    /**
+     * Children per inner node: 2, 4, 8 or 16. Wider nodes make the tree shallower, so updates and
+     * reads from mapped or remote storage touch fewer levels, at the cost of larger proofs.
+     */
+    @Builder.Default
+    private final int arity = 2;
+
+    /**
+     * Keeps a copy of every string leaf value, see {@link MerkleTree#getValue(int)}. Without it a
+     * tree holds nothing but hashes.
+     */
+    @Builder.Default
+    private final boolean retainValues = true;
+
+    /**
+     * Receives latencies, hash counts, lock waits and dirty set sizes; records nothing by default.
+     */
+    @Builder.Default
+    private final MerkleTreeMetrics metrics = MerkleTreeMetrics.NOOP;
+
+    /**
+     * Bounds the proof cache of {@link MerkleTree#getMerkleProof(int)} to this many leaves; zero,
+     * the default, disables it. See {@link ProofCache}.
+     */
+    private final int proofCacheSize;
+
+    /**
+     * Top levels of a tree opened from a file that are also kept on the heap, so proofs do not
+     * fault in their pages; fewer than {@code 2^pinnedLevels} hashes for a binary tree. The proof
+     * cache reads these levels from the tree instead of caching them.
+     */
+    @Builder.Default
+    private final int pinnedLevels = DEFAULT_PINNED_LEVELS;
+
+    /**
+     * Keeps level hashes off the heap in {@link DirectHashStore}s, so the garbage collector neither
+     * scans nor copies them. Such a tree must be closed to free them, and its reads take the read
+     * lock like those of a mapped tree. String values and the index behind lookups by value stay on
+     * the heap; without {@link #retainValues} and lookups by value the heap footprint of a tree does
+     * not grow with its leaf count.
+     */
+    private final boolean offHeap;
+
+    public static MerkleTreeConfig defaults() {
+        return builder().build();
+    }
+}
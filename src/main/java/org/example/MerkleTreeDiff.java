@@ -0,0 +1,98 @@
+package org.example;
+
+import java.util.Arrays;
+
+/**
+ * Finds the leaves that differ between two trees by walking them top-down and descending only
+ * into subtrees whose hashes differ. Each level costs one batched {@link TreeHashSource#nodeHashes}
+ * call per tree, so comparing against a remote tree takes one round trip per level and
+ * O(d log n) hashes for d differences.
+ */
+public final class MerkleTreeDiff {
+
+    private MerkleTreeDiff() {
+    }
+
+    /**
+     * Returns, in ascending order, the positions whose leaves differ plus every position that
+     * exists in only one of the trees. Both trees must use the same hash function and arity.
+     */
+    public static int[] diff(TreeHashSource local, TreeHashSource remote) {
+        int common = Math.min(local.size(), remote.size());
+        return withTail(diffPrefix(local, remote), common, Math.max(local.size(), remote.size()));
+    }
+
+    /**
+     * Returns, in ascending order, the positions held by both trees whose leaves differ. Unlike
+     * {@link #diff} it leaves out the positions past the shorter tree, which a caller can handle
+     * as one range.
+     */
+    public static int[] diffPrefix(TreeHashSource local, TreeHashSource remote) {
+        if (local.hashLength() != remote.hashLength()) {
+            throw new IllegalArgumentException("trees use hashes of different lengths");
+        }
+        if (local.arity() != remote.arity()) {
+            throw new IllegalArgumentException("trees have different arities");
+        }
+        int arity = local.arity();
+        int shift = Integer.numberOfTrailingZeros(arity);
+        int common = Math.min(local.size(), remote.size());
+        int hashLength = local.hashLength();
+
+        int level = levelCount(common, arity) - 1;
+        int[] candidates = {0};
+        while (true) {
+            byte[] localHashes = local.nodeHashes(level, candidates);
+            byte[] remoteHashes = remote.nodeHashes(level, candidates);
+            int[] differing = new int[candidates.length];
+            int count = 0;
+            for (int j = 0; j < candidates.length; j++) {
+                int node = candidates[j];
+                // a node reaching past the shorter tree covers different leaves on both sides
+                boolean partial = ((long) node + 1 << (level * shift)) > common;
+                if (partial || !Arrays.equals(localHashes, j * hashLength, (j + 1) * hashLength,
+                        remoteHashes, j * hashLength, (j + 1) * hashLength)) {
+                    differing[count++] = node;
+                }
+            }
+            if (level == 0 || count == 0) {
+                return Arrays.copyOf(differing, level == 0 ? count : 0);
+            }
+            level--;
+            candidates = childrenOf(differing, count, levelSize(common, level, arity), shift);
+        }
+    }
+
+    private static int[] childrenOf(int[] nodes, int count, int childLevelSize, int shift) {
+        int[] children = new int[count << shift];
+        int n = 0;
+        for (int j = 0; j < count; j++) {
+            int first = nodes[j] << shift;
+            for (int child = first; child < Math.min(first + (1 << shift), childLevelSize); child++) {
+                children[n++] = child;
+            }
+        }
+        return Arrays.copyOf(children, n);
+    }
+
+    private static int[] withTail(int[] differing, int common, int longest) {
+        int[] all = Arrays.copyOf(differing, differing.length + (longest - common));
+        for (int i = common; i < longest; i++) {
+            all[differing.length + i - common] = i;
+        }
+        return all;
+    }
+
+    static int levelCount(int leafCount, int arity) {
+        int levels = 1;
+        for (int size = leafCount; size > 1; size = (size + arity - 1) / arity) {
+            levels++;
+        }
+        return levels;
+    }
+
+    static int levelSize(int leafCount, int level, int arity) {
+        int shift = level * Integer.numberOfTrailingZeros(arity);
+        return (int) (((long) leafCount + (1L << shift) - 1) >>> shift);
+    }
+}
@@ -0,0 +1,122 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary file format of a tree: a 32-byte header followed by the hashes of every level,
+ * leaves first and the root last, each level stored contiguously.
+ * <pre>
+ *  0  int magic "MKL1"
+ *  4  int format version
+ *  8  int hash length
+ * 12  int leaf count
+ * 16  int level count
+ * 20  int arity, zero in files of binary trees written before it was recorded
+ * 24  reserved, zero
+ * 32  level 0 hashes, level 1 hashes, ..., root hash
+ * </pre>
+ */
+final class MerkleTreeFile {
+
+    static final int MAGIC = 0x4D4B4C31;
+    static final int VERSION = 1;
+    static final int HEADER_LENGTH = 32;
+
+    private MerkleTreeFile() {
+    }
+
+    static void write(HashStore[] levels, int arity, Path file) throws IOException {
+        int hashLength = levels[0].hashLength();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH)
+                    .putInt(MAGIC).putInt(VERSION).putInt(hashLength).putInt(levels[0].size()).putInt(levels.length).putInt(arity);
+            header.clear();
+            writeFully(channel, header);
+
+            byte[] buffer = new byte[(1 << 16) / hashLength * hashLength];
+            ByteBuffer out = ByteBuffer.wrap(buffer);
+            for (HashStore level : levels) {
+                int filled = 0;
+                for (int i = 0; i < level.size(); i++) {
+                    level.read(i, buffer, filled);
+                    filled += hashLength;
+                    if (filled == buffer.length) {
+                        writeFully(channel, out.clear().limit(filled));
+                        filled = 0;
+                    }
+                }
+                writeFully(channel, out.clear().limit(filled));
+            }
+        }
+    }
+
+    /**
+     * Maps every level of {@code file} and copies the top {@link MerkleTreeConfig#getPinnedLevels()}
+     * of them to the heap; the returned tree owns the channel.
+     */
+    static MerkleTree open(Path file, MerkleTreeConfig config, boolean writable) throws IOException {
+        FileChannel channel = writable
+                ? FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) break;
+            }
+            header.flip();
+            if (header.remaining() < HEADER_LENGTH || header.getInt() != MAGIC) {
+                throw new IOException(file + " is not a merkle tree file");
+            }
+            int version = header.getInt();
+            if (version != VERSION) throw new IOException("unsupported merkle tree file version " + version);
+            int hashLength = header.getInt();
+            int leafCount = header.getInt();
+            int levelCount = header.getInt();
+            int arity = Math.max(header.getInt(), 2);
+            if (levelCount < 1) {
+                throw new IOException("file holds " + levelCount + " levels, a tree has at least one");
+            }
+            if (arity != config.getArity()) {
+                throw new IOException("file holds a tree of arity " + arity + " but the config asks for " + config.getArity());
+            }
+            if (hashLength != config.getHashFunction().digestLength()) {
+                throw new IOException("file holds " + hashLength + "-byte hashes but the hash function produces "
+                        + config.getHashFunction().digestLength());
+            }
+
+            FileChannel.MapMode mode = writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY;
+            HashStore[] levels = new HashStore[levelCount];
+            long offset = HEADER_LENGTH;
+            int size = leafCount;
+            for (int level = 0; level < levelCount; level++) {
+                if (size < 1 || (level == levelCount - 1) != (size == 1)) {
+                    throw new IOException("inconsistent level count " + levelCount + " for " + leafCount + " leaves");
+                }
+                if (offset + (long) size * hashLength > channel.size()) {
+                    throw new IOException(file + " is truncated at level " + level);
+                }
+                levels[level] = new MappedHashStore(channel, mode, offset, size, hashLength);
+                offset += (long) size * hashLength;
+                size = (size + arity - 1) / arity;
+            }
+            for (int level = Math.max(0, levelCount - config.getPinnedLevels()); level < levelCount; level++) {
+                levels[level] = new PinnedHashStore(levels[level]);
+            }
+            return new MerkleTree(levels, config, channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
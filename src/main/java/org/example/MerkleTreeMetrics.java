@@ -0,0 +1,43 @@
+package org.example;
+
+/**
+ * Receives measurements of {@link MerkleTree} operations. Every method defaults to a no-op, so
+ * an implementation overrides only what it records; implementations must be thread-safe and cheap,
+ * they run on the hot path. {@link InMemoryMerkleTreeMetrics} keeps histograms in process.
+ */
+public interface MerkleTreeMetrics {
+
+    MerkleTreeMetrics NOOP = new MerkleTreeMetrics() {
+    };
+
+    /**
+     * What a measurement was taken for; {@code LOOKUP} covers finding the leaves holding a value.
+     */
+    enum Operation {
+        BUILD, PROOF, VERIFY, UPDATE, LOOKUP
+    }
+
+    /**
+     * Wall time of one operation; updates include appends and truncations.
+     */
+    default void recordLatency(Operation operation, long nanos) {
+    }
+
+    /**
+     * Number of leaf and node hashes one operation computed.
+     */
+    default void recordHashes(Operation operation, long hashes) {
+    }
+
+    /**
+     * Time an operation waited for the tree lock or the leaf index before it could start.
+     */
+    default void recordLockWait(Operation operation, long nanos) {
+    }
+
+    /**
+     * Number of leaves and inner nodes an update rehashed.
+     */
+    default void recordDirtyNodes(long nodes) {
+    }
+}
@@ -0,0 +1,326 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.IntStream;
+
+/**
+ * Immutable version of a {@link MerkleTree}. Every update of a tree publishes a new version
+ * whose level stores share all untouched pages with the previous one; reads against a version
+ * take no lock and are never blocked by, or affected by, later updates. A version of a heap tree
+ * also carries its own leaf index and leaf values, shared page by page in the same way, so
+ * lookups by value are answered from the version without locking or scanning.
+ */
+public class MerkleTreeSnapshot implements TreeHashSource {
+
+    private final HashStore[] levels;
+    private final HashFunction hashFunction;
+    private final int hashLength;
+    private final int arity;
+    private final long version;
+    // null when the version was published without them
+    private final LeafIndex leafIndex;
+    private final LeafValues values;
+
+    MerkleTreeSnapshot(HashStore[] levels, HashFunction hashFunction, int arity, long version) {
+        this(levels, hashFunction, arity, version, null, null);
+    }
+
+    MerkleTreeSnapshot(HashStore[] levels, HashFunction hashFunction, int arity, long version,
+                       LeafIndex leafIndex, LeafValues values) {
+        this.levels = levels;
+        this.hashFunction = hashFunction;
+        this.hashLength = hashFunction.digestLength();
+        this.arity = arity;
+        this.version = version;
+        this.leafIndex = leafIndex;
+        this.values = values;
+    }
+
+    /**
+     * Returns the number of updates the tree had seen when this version was published.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the proof of the leaf at {@code leafIndex}; the cost depends only on the tree height.
+     */
+    public List<MerkleProof> getMerkleProof(int leafIndex) {
+        checkBinary();
+        Objects.checkIndex(leafIndex, levels[0].size());
+        List<MerkleProof> proofs = new ArrayList<>(levels.length - 1);
+        int index = leafIndex;
+        for (int level = 0; level < levels.length - 1; level++) {
+            byte[] sibling = new byte[hashLength];
+            readSibling(level, index, sibling, 0);
+            MerkleProof.Direction direction = (index & 1) == 0 ? MerkleProof.Direction.RIGHT : MerkleProof.Direction.LEFT;
+            proofs.add(new MerkleProof(sibling, direction));
+            index >>>= 1;
+        }
+        return proofs;
+    }
+
+    /**
+     * Copies the binary sibling of node {@code index} of {@code level} into {@code dst}.
+     */
+    void readSibling(int level, int index, byte[] dst, int dstOffset) {
+        HashStore nodes = levels[level];
+        // the last node of an odd level is its own sibling
+        int sibling = (index & 1) == 0 ? Math.min(index + 1, nodes.size() - 1) : index - 1;
+        nodes.read(sibling, dst, dstOffset);
+    }
+
+    int levelCount() {
+        return levels.length;
+    }
+
+    /**
+     * Writes the proof of the leaf at {@code leafIndex} to {@code out} in the {@link EncodedMerkleProof}
+     * format, copying sibling hashes straight from the level stores.
+     */
+    public void writeMerkleProof(int leafIndex, ByteBuffer out) {
+        checkBinary();
+        Objects.checkIndex(leafIndex, levels[0].size());
+        EncodedMerkleProof.writeHeader(leafIndex, levels[0].size(), hashLength, levels.length - 1, out);
+        int index = leafIndex;
+        for (int level = 0; level < levels.length - 1; level++) {
+            HashStore nodes = levels[level];
+            int sibling = (index & 1) == 0 ? Math.min(index + 1, nodes.size() - 1) : index - 1;
+            nodes.read(sibling, out);
+            index >>>= 1;
+        }
+    }
+
+    /**
+     * Returns one proof for all the given leaf positions, holding each needed sibling hash once.
+     */
+    public MultiProof getMultiProof(int... leafIndices) {
+        checkBinary();
+        int[] known = Arrays.stream(leafIndices).sorted().distinct().toArray();
+        if (known.length == 0) throw new InvalidParameterException("At least one leaf index expected!");
+        for (int index : known) {
+            Objects.checkIndex(index, levels[0].size());
+        }
+        int[] proven = known;
+        byte[] siblings = new byte[Math.min(known.length, 64) * hashLength];
+        int filled = 0;
+        for (int level = 0; level < levels.length - 1; level++) {
+            HashStore nodes = levels[level];
+            for (int j = 0; j < known.length; j++) {
+                int index = known[j];
+                int sibling;
+                if ((index & 1) == 0) {
+                    if (j + 1 < known.length && known[j + 1] == index + 1) {
+                        j++;
+                        continue;
+                    }
+                    if (index == nodes.size() - 1) continue; // combined with itself
+                    sibling = index + 1;
+                } else {
+                    sibling = index - 1;
+                }
+                if (filled == siblings.length) siblings = Arrays.copyOf(siblings, siblings.length * 2);
+                nodes.read(sibling, siblings, filled);
+                filled += hashLength;
+            }
+            known = MerkleTree.parentsOf(known);
+        }
+        return new MultiProof(levels[0].size(), proven, hashLength, Arrays.copyOf(siblings, filled));
+    }
+
+    /**
+     * Checks that {@code proofList} leads from the hash of {@code data} to the root of this version.
+     */
+    public boolean verifyMerkleProof(String data, List<MerkleProof> proofList) {
+        checkBinary();
+        if (proofList.size() != levels.length - 1) return false;
+        byte[] hash = new byte[hashLength];
+        hashFunction.hashUtf8(data, hash, 0);
+        MerkleProofVerifier.fold(hash, proofList, hashFunction);
+        return Arrays.equals(getRootHash(), hash);
+    }
+
+    /**
+     * Verifies {@code proof} against the root of this version; {@code data} holds the value of every
+     * leaf in {@link MultiProof#getLeafIndices()}, in that order.
+     */
+    public boolean verifyMultiProof(List<String> data, MultiProof proof) {
+        checkBinary();
+        if (proof.getLeafCount() != levels[0].size()) return false;
+        List<byte[]> leafHashes = new ArrayList<>(data.size());
+        for (String value : data) {
+            byte[] hash = new byte[hashLength];
+            hashFunction.hashUtf8(value, hash, 0);
+            leafHashes.add(hash);
+        }
+        return proof.verify(leafHashes, getRootHash(), hashFunction);
+    }
+
+    /**
+     * Returns the proof of the leaf at {@code leafIndex} as sibling groups; works for every arity.
+     */
+    public GroupProof getGroupProof(int leafIndex) {
+        Objects.checkIndex(leafIndex, levels[0].size());
+        byte[] siblings = new byte[(levels.length - 1) * (arity - 1) * hashLength];
+        int filled = 0;
+        int index = leafIndex;
+        for (int level = 0; level < levels.length - 1; level++) {
+            HashStore nodes = levels[level];
+            int first = index - index % arity;
+            int end = Math.min(first + arity, nodes.size());
+            for (int child = first; child < end; child++) {
+                if (child != index) {
+                    nodes.read(child, siblings, filled);
+                    filled += hashLength;
+                }
+            }
+            index /= arity;
+        }
+        return new GroupProof(levels[0].size(), leafIndex, arity, hashLength, Arrays.copyOf(siblings, filled));
+    }
+
+    /**
+     * Checks that {@code proof} leads from the hash of {@code data} to the root of this version.
+     */
+    public boolean verifyGroupProof(String data, GroupProof proof) {
+        if (proof.getLeafCount() != levels[0].size() || proof.getArity() != arity) return false;
+        byte[] hash = new byte[hashLength];
+        hashFunction.hashUtf8(data, hash, 0);
+        return proof.verify(hash, getRootHash(), hashFunction);
+    }
+
+    /**
+     * Returns the value of the leaf at {@code leafIndex} in this version, or null when values are
+     * not retained or the leaf was set from bytes or a hash.
+     */
+    public String getValue(int leafIndex) {
+        Objects.checkIndex(leafIndex, levels[0].size());
+        return values == null ? null : values.get(leafIndex);
+    }
+
+    /**
+     * Returns the leaf index of this version, or null when it was published without one.
+     */
+    LeafIndex leafIndex() {
+        return leafIndex;
+    }
+
+    /**
+     * Returns the positions of the leaves whose hash is {@code hash}, in ascending order, by
+     * scanning every leaf; for versions published without a leaf index.
+     */
+    int[] leavesWithHash(byte[] hash) {
+        HashStore leaves = levels[0];
+        byte[] candidate = new byte[hashLength];
+        return IntStream.range(0, leaves.size()).filter(i -> {
+            leaves.read(i, candidate, 0);
+            return Arrays.equals(candidate, hash);
+        }).toArray();
+    }
+
+    /**
+     * Returns the first leaf holding each of {@code hashes}, or -1, in one scan of the leaves.
+     */
+    int[] firstLeavesWithHashes(List<byte[]> hashes) {
+        Map<ByteBuffer, List<Integer>> wanted = new HashMap<>();
+        for (int j = 0; j < hashes.size(); j++) {
+            wanted.computeIfAbsent(ByteBuffer.wrap(hashes.get(j)), hash -> new ArrayList<>()).add(j);
+        }
+        int[] first = new int[hashes.size()];
+        Arrays.fill(first, -1);
+        byte[] candidate = new byte[hashLength];
+        HashStore leaves = levels[0];
+        for (int i = 0; i < leaves.size() && !wanted.isEmpty(); i++) {
+            leaves.read(i, candidate, 0);
+            List<Integer> slots = wanted.remove(ByteBuffer.wrap(candidate));
+            if (slots != null) {
+                for (int j : slots) {
+                    first[j] = i;
+                }
+            }
+        }
+        return first;
+    }
+
+    /**
+     * Tells whether the leaf at {@code leafIndex} exists in this version and has hash {@code hash}.
+     */
+    boolean leafMatches(int leafIndex, byte[] hash) {
+        return leafIndex < levels[0].size() && Arrays.equals(levels[0].get(leafIndex), hash);
+    }
+
+    /**
+     * Returns a copy of every leaf hash, in leaf order.
+     */
+    List<byte[]> leafHashes() {
+        List<byte[]> hashes = new ArrayList<>(levels[0].size());
+        for (int i = 0; i < levels[0].size(); i++) {
+            hashes.add(levels[0].get(i));
+        }
+        return hashes;
+    }
+
+    @Override
+    public int size() {
+        return levels[0].size();
+    }
+
+    @Override
+    public int hashLength() {
+        return hashLength;
+    }
+
+    @Override
+    public int arity() {
+        return arity;
+    }
+
+    /**
+     * Returns the hashes of the given nodes of {@code level}, level 0 being the leaves.
+     */
+    @Override
+    public byte[] nodeHashes(int level, int[] indices) {
+        Objects.checkIndex(level, levels.length);
+        byte[] hashes = new byte[indices.length * hashLength];
+        for (int j = 0; j < indices.length; j++) {
+            levels[level].read(indices[j], hashes, j * hashLength);
+        }
+        return hashes;
+    }
+
+    /**
+     * Returns the positions of the leaves that differ from {@code other}; see {@link MerkleTreeDiff}.
+     */
+    public int[] diff(TreeHashSource other) {
+        return MerkleTreeDiff.diff(this, other);
+    }
+
+    /**
+     * Writes every level hash of this version to {@code file} in the format read by {@link MerkleTree#open}.
+     */
+    public void save(Path file) throws IOException {
+        MerkleTreeFile.write(levels, arity, file);
+    }
+
+    public HashFunction getHashFunction() {
+        return hashFunction;
+    }
+
+    public byte[] getRootHash() {
+        return levels[levels.length - 1].get(0);
+    }
+
+    private void checkBinary() {
+        if (arity != 2) throw new UnsupportedOperationException("a tree of arity " + arity + " is proven with group proofs");
+    }
+}
@@ -0,0 +1,75 @@
+package org.example;
+
+import java.nio.ByteBuffer;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * {@link HashFunction} backed by a JDK {@link MessageDigest}. Every thread reuses its own
+ * digest instance, and left/right hashes are fed to it directly when combining.
+ */
+public class MessageDigestHashFunction implements HashFunction {
+
+    private final String algorithm;
+    private final int digestLength;
+    private final ThreadLocal<MessageDigest> digests;
+
+    public MessageDigestHashFunction(String algorithm) {
+        this.algorithm = algorithm;
+        this.digestLength = newDigest(algorithm).getDigestLength();
+        this.digests = ThreadLocal.withInitial(() -> newDigest(algorithm));
+    }
+
+    @Override
+    public byte[] hash(byte[] data) {
+        return digests.get().digest(data);
+    }
+
+    @Override
+    public int digestLength() {
+        return digestLength;
+    }
+
+    @Override
+    public void hash(byte[] data, int offset, int length, byte[] out, int outOffset) {
+        MessageDigest digest = digests.get();
+        digest.update(data, offset, length);
+        finish(digest, out, outOffset);
+    }
+
+    @Override
+    public void hash(ByteBuffer data, byte[] out, int outOffset) {
+        MessageDigest digest = digests.get();
+        digest.update(data.duplicate());
+        finish(digest, out, outOffset);
+    }
+
+    @Override
+    public void combine(byte[] left, int leftOffset, byte[] right, int rightOffset, byte[] out, int outOffset) {
+        MessageDigest digest = digests.get();
+        digest.update(left, leftOffset, digestLength);
+        digest.update(right, rightOffset, digestLength);
+        finish(digest, out, outOffset);
+    }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    private void finish(MessageDigest digest, byte[] out, int outOffset) {
+        try {
+            digest.digest(out, outOffset, digestLength);
+        } catch (DigestException e) {
+            throw new IllegalArgumentException("output buffer too small for " + algorithm + " digest", e);
+        }
+    }
+
+    private static MessageDigest newDigest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(algorithm + " hash algorithm not found.", e);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package org.example;
+
+import lombok.Getter;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Proof for several leaves at once. It carries only the sibling hashes that cannot be
+ * computed from the proven leaves themselves, in the order a bottom-up, left-to-right walk
+ * consumes them, so upper levels shared by many paths are sent and hashed once.
+ */
+@Getter
+public class MultiProof {
+
+    private final int leafCount;
+    // sorted and distinct
+    private final int[] leafIndices;
+    private final int hashLength;
+    // sibling hashes back to back
+    private final byte[] siblings;
+
+    public MultiProof(int leafCount, int[] leafIndices, int hashLength, byte[] siblings) {
+        this.leafCount = leafCount;
+        this.leafIndices = leafIndices;
+        this.hashLength = hashLength;
+        this.siblings = siblings;
+    }
+
+    public int siblingCount() {
+        return siblings.length / hashLength;
+    }
+
+    /**
+     * Rebuilds the root from {@code leafHashes}, given in the order of {@link #getLeafIndices()},
+     * and compares it with {@code expectedRoot}. Each inner node on the union of the paths is
+     * hashed exactly once.
+     */
+    public boolean verify(List<byte[]> leafHashes, byte[] expectedRoot, HashFunction hashFunction) {
+        int count = leafIndices.length;
+        int length = hashLength;
+        if (count == 0 || leafHashes.size() != count || hashFunction.digestLength() != length
+                || siblings.length % length != 0 || !isStrictlyIncreasing(leafIndices, leafCount)) {
+            return false;
+        }
+        int[] indices = leafIndices.clone();
+        byte[] hashes = new byte[count * length];
+        for (int j = 0; j < count; j++) {
+            byte[] leafHash = leafHashes.get(j);
+            if (leafHash.length != length) return false;
+            System.arraycopy(leafHash, 0, hashes, j * length, length);
+        }
+
+        int cursor = 0;
+        for (int size = leafCount; size > 1; size = (size + 1) / 2) {
+            int out = 0;
+            for (int j = 0; j < count; j++, out++) {
+                int index = indices[j];
+                int at = j * length;
+                if ((index & 1) == 0) {
+                    if (j + 1 < count && indices[j + 1] == index + 1) {
+                        hashFunction.combine(hashes, at, hashes, at + length, hashes, out * length);
+                        j++;
+                    } else if (index == size - 1) {
+                        hashFunction.combine(hashes, at, hashes, at, hashes, out * length);
+                    } else {
+                        if (cursor == siblings.length) return false;
+                        hashFunction.combine(hashes, at, siblings, cursor, hashes, out * length);
+                        cursor += length;
+                    }
+                } else {
+                    if (cursor == siblings.length) return false;
+                    hashFunction.combine(siblings, cursor, hashes, at, hashes, out * length);
+                    cursor += length;
+                }
+                indices[out] = index >>> 1;
+            }
+            count = out;
+        }
+        return cursor == siblings.length && Arrays.equals(hashes, 0, length, expectedRoot, 0, expectedRoot.length);
+    }
+
+    private static boolean isStrictlyIncreasing(int[] indices, int leafCount) {
+        for (int j = 0; j < indices.length; j++) {
+            if (indices[j] < 0 || indices[j] >= leafCount || (j > 0 && indices[j] <= indices[j - 1])) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,58 @@
+package org.example;
+
+/**
+ * {@link HashStore} that keeps a heap copy of another store. Reads are served from the copy and
+ * writes go to both, so a level of a mapped tree can stay in memory while its file stays current.
+ */
+class PinnedHashStore implements HashStore {
+
+    private final HashStore backing;
+    private final HeapHashStore pinned;
+
+    PinnedHashStore(HashStore backing) {
+        this.backing = backing;
+        this.pinned = new HeapHashStore(backing.size(), backing.hashLength());
+        byte[] hash = new byte[backing.hashLength()];
+        for (int i = 0; i < backing.size(); i++) {
+            backing.read(i, hash, 0);
+            pinned.write(i, hash, 0);
+        }
+    }
+
+    @Override
+    public int size() {
+        return pinned.size();
+    }
+
+    @Override
+    public int hashLength() {
+        return pinned.hashLength();
+    }
+
+    @Override
+    public void read(int index, byte[] dst, int dstOffset) {
+        pinned.read(index, dst, dstOffset);
+    }
+
+    @Override
+    public void write(int index, byte[] src, int srcOffset) {
+        backing.write(index, src, srcOffset);
+        pinned.write(index, src, srcOffset);
+    }
+
+    @Override
+    public void resize(int size) {
+        backing.resize(size);
+        pinned.resize(size);
+    }
+
+    @Override
+    public void flush() {
+        backing.flush();
+    }
+
+    @Override
+    public HashStore snapshot() {
+        return pinned.snapshot();
+    }
+}
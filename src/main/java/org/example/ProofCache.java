@@ -0,0 +1,176 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * Bounded cache of the proofs of hot leaves of a binary {@link MerkleTree}, enabled by
+ * {@link MerkleTreeConfig#getProofCacheSize()}. An entry holds the sibling hashes of one leaf below
+ * the top {@link MerkleTreeConfig#getPinnedLevels()} levels; those few levels change on almost every
+ * update and are read from the tree instead. Entries belong to the latest tree version: an update
+ * marks as stale exactly the steps whose sibling it rewrote, so an entry whose path it did not
+ * touch stays whole and one it did is refilled from the first stale step up. Appends and
+ * truncations move every sibling and empty the cache. The least recently used leaf is evicted
+ * once {@code capacity} leaves are cached.
+ */
+public class ProofCache {
+
+    private static final class Entry {
+        final byte[] siblings;
+        // steps from the leaf up whose cached sibling is still current
+        int valid;
+
+        Entry(int length) {
+            this.siblings = new byte[length];
+        }
+    }
+
+    private final int capacity;
+    private final int topLevels;
+    private final int hashLength;
+    // access order for eviction, leaf order for invalidating the leaves below a node
+    private final LinkedHashMap<Integer, Entry> recent = new LinkedHashMap<>(16, 0.75f, true);
+    private final TreeMap<Integer, Entry> byLeaf = new TreeMap<>();
+    private long version;
+
+    private long hits;
+    private long partialHits;
+    private long misses;
+    private long evictions;
+
+    ProofCache(int capacity, int topLevels, int hashLength, long version) {
+        this.capacity = capacity;
+        this.topLevels = topLevels;
+        this.hashLength = hashLength;
+        this.version = version;
+    }
+
+    /**
+     * Returns the proof of the leaf at {@code leafIndex} in {@code version}, reading from the tree
+     * only what is not cached. Versions other than the latest bypass the cache.
+     */
+    List<MerkleProof> getMerkleProof(MerkleTreeSnapshot version, int leafIndex) {
+        Objects.checkIndex(leafIndex, version.size());
+        int steps = version.levelCount() - 1;
+        int cached = Math.max(0, steps - topLevels);
+        byte[] siblings = new byte[steps * hashLength];
+        int valid = cached == 0 ? 0 : lookup(version.getVersion(), leafIndex, siblings);
+        for (int level = valid; level < steps; level++) {
+            version.readSibling(level, leafIndex >>> level, siblings, level * hashLength);
+        }
+        if (valid < cached) {
+            store(version.getVersion(), leafIndex, siblings, cached);
+        }
+        List<MerkleProof> proofs = new ArrayList<>(steps);
+        for (int level = 0; level < steps; level++) {
+            byte[] sibling = new byte[hashLength];
+            System.arraycopy(siblings, level * hashLength, sibling, 0, hashLength);
+            boolean isLeft = ((leafIndex >>> level) & 1) == 0;
+            proofs.add(new MerkleProof(sibling, isLeft ? MerkleProof.Direction.RIGHT : MerkleProof.Direction.LEFT));
+        }
+        return proofs;
+    }
+
+    private synchronized int lookup(long version, int leafIndex, byte[] siblings) {
+        Entry entry = version == this.version ? recent.get(leafIndex) : null;
+        if (entry == null || entry.valid == 0) {
+            misses++;
+            return 0;
+        }
+        if (entry.valid * hashLength == entry.siblings.length) {
+            hits++;
+        } else {
+            partialHits++;
+        }
+        System.arraycopy(entry.siblings, 0, siblings, 0, entry.valid * hashLength);
+        return entry.valid;
+    }
+
+    private synchronized void store(long version, int leafIndex, byte[] siblings, int cached) {
+        // a proof read from a version that has been replaced meanwhile may be stale
+        if (version != this.version) return;
+        Entry entry = recent.get(leafIndex);
+        if (entry == null) {
+            entry = new Entry(cached * hashLength);
+            recent.put(leafIndex, entry);
+            byLeaf.put(leafIndex, entry);
+            if (recent.size() > capacity) {
+                Iterator<Map.Entry<Integer, Entry>> eldest = recent.entrySet().iterator();
+                byLeaf.remove(eldest.next().getKey());
+                eldest.remove();
+                evictions++;
+            }
+        }
+        System.arraycopy(siblings, 0, entry.siblings, 0, entry.siblings.length);
+        entry.valid = cached;
+    }
+
+    /**
+     * Moves the cache to {@code newVersion}, in which the nodes {@code dirty[level]} of each level
+     * of a tree of {@code leafCount} leaves were rewritten. Must be called before the version is
+     * published.
+     */
+    synchronized void update(long newVersion, int[][] dirty, int leafCount) {
+        version = newVersion;
+        int cached = dirty.length - 1 - topLevels;
+        for (int level = 0; level < cached; level++) {
+            for (int node : dirty[level]) {
+                // the leaves below the sibling of a node have it in their proof, and so do the
+                // leaves below the last node of a level that is combined with itself
+                staleBelow(node ^ 1, level, leafCount);
+                if ((node & 1) == 0 && (long) (node + 1) << level >= leafCount) {
+                    staleBelow(node, level, leafCount);
+                }
+            }
+        }
+    }
+
+    private void staleBelow(int node, int level, int leafCount) {
+        long first = (long) node << level;
+        if (first >= leafCount) return;
+        long last = Math.min(((long) node + 1 << level) - 1, leafCount - 1);
+        for (Entry entry : byLeaf.subMap((int) first, true, (int) last, true).values()) {
+            entry.valid = Math.min(entry.valid, level);
+        }
+    }
+
+    /**
+     * Drops every entry and moves the cache to {@code newVersion}.
+     */
+    synchronized void clear(long newVersion) {
+        version = newVersion;
+        recent.clear();
+        byLeaf.clear();
+    }
+
+    public synchronized int size() {
+        return recent.size();
+    }
+
+    /**
+     * Proofs served entirely from the cache, below the top levels.
+     */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    /**
+     * Proofs whose lower steps came from the cache and whose upper steps were refilled after an update.
+     */
+    public synchronized long getPartialHitCount() {
+        return partialHits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+}
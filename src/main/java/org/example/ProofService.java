@@ -0,0 +1,199 @@
+package org.example;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.example.MerkleTreeMetrics.Operation;
+
+/**
+ * Asynchronous proof front end of a {@link MerkleTree} for callers issuing many concurrent requests.
+ * Requests are queued and drained in micro-batches on the given executor: a batch is answered
+ * from one tree version, resolves all its values with one pass over the leaf index, and computes
+ * each distinct leaf proof once however many requests ask for it. Requests arriving while a
+ * batch runs form the next batch, so batches grow with load instead of waiting for a timer.
+ * <p>
+ * The executor is only borrowed. Any executor works; on a JDK with virtual threads,
+ * {@code Executors.newVirtualThreadPerTaskExecutor()} is a natural fit.
+ */
+public class ProofService implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger(ProofService.class);
+
+    public static final int DEFAULT_MAX_BATCH = 512;
+
+    private final MerkleTree tree;
+    private final Executor executor;
+    private final int maxBatch;
+    private final int maxConcurrentBatches;
+    private final Queue<Request> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger activeBatches = new AtomicInteger();
+    private volatile boolean closed;
+
+    public ProofService(MerkleTree tree, Executor executor) {
+        this(tree, executor, DEFAULT_MAX_BATCH, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param maxBatch             most requests answered by one batch
+     * @param maxConcurrentBatches most batches running at once on {@code executor}
+     */
+    public ProofService(MerkleTree tree, Executor executor, int maxBatch, int maxConcurrentBatches) {
+        if (maxBatch < 1 || maxConcurrentBatches < 1) {
+            throw new IllegalArgumentException("batch size and concurrency must be positive");
+        }
+        this.tree = tree;
+        this.executor = executor;
+        this.maxBatch = maxBatch;
+        this.maxConcurrentBatches = maxConcurrentBatches;
+    }
+
+    /**
+     * Proof of the leaf at {@code leafIndex}. Proof lists may be shared between requests for the same
+     * leaf and are unmodifiable.
+     */
+    public CompletableFuture<List<MerkleProof>> getMerkleProof(int leafIndex) {
+        return submit(new Request(Kind.INDEX, leafIndex, null, null));
+    }
+
+    /**
+     * Proof of the first leaf holding {@code data}, empty when no leaf does, as {@link MerkleTree#getMerkleProof(String)}.
+     */
+    public CompletableFuture<List<MerkleProof>> getMerkleProof(String data) {
+        return submit(new Request(Kind.VALUE, -1, data, null));
+    }
+
+    public CompletableFuture<Boolean> verifyMerkleProof(String data, List<MerkleProof> proof) {
+        return submit(new Request(Kind.VERIFY, -1, data, proof));
+    }
+
+    /**
+     * Stops accepting requests; queued requests are still answered.
+     */
+    @Override
+    public void close() {
+        closed = true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<T> submit(Request request) {
+        if (closed) return CompletableFuture.failedFuture(new IllegalStateException("proof service is closed"));
+        queue.add(request);
+        schedule();
+        return (CompletableFuture<T>) request.result;
+    }
+
+    /**
+     * Starts a batch if requests are waiting and fewer than the allowed batches run. Called after
+     * every enqueue and after every batch, so no request is left without a batch to pick it up.
+     */
+    private void schedule() {
+        while (!queue.isEmpty()) {
+            int active = activeBatches.get();
+            if (active >= maxConcurrentBatches) return;
+            if (activeBatches.compareAndSet(active, active + 1)) {
+                try {
+                    executor.execute(this::runBatch);
+                } catch (RuntimeException e) {
+                    activeBatches.decrementAndGet();
+                    failQueued(e);
+                }
+                return;
+            }
+        }
+    }
+
+    private void runBatch() {
+        try {
+            List<Request> batch = new ArrayList<>();
+            for (Request request; batch.size() < maxBatch && (request = queue.poll()) != null; ) {
+                batch.add(request);
+            }
+            if (!batch.isEmpty()) answer(batch);
+        } finally {
+            activeBatches.decrementAndGet();
+            schedule();
+        }
+    }
+
+    private void answer(List<Request> batch) {
+        try {
+            tree.read(version -> {
+                Map<Integer, List<MerkleProof>> proofs = new HashMap<>();
+                resolveValues(version, batch);
+                for (Request request : batch) {
+                    try {
+                        if (request.kind == Kind.VERIFY) {
+                            request.result.complete(version.verifyMerkleProof(request.data, request.proof));
+                        } else if (request.kind == Kind.VALUE && request.leafIndex < 0) {
+                            request.result.complete(List.of());
+                        } else {
+                            request.result.complete(proofs.computeIfAbsent(request.leafIndex,
+                                    index -> List.copyOf(tree.proofOf(version, index))));
+                        }
+                    } catch (RuntimeException e) {
+                        request.result.completeExceptionally(e);
+                    }
+                }
+                logger.debug("answered {} proof requests for {} distinct leaves", batch.size(), proofs.size());
+                return null;
+            });
+        } catch (RuntimeException e) {
+            for (Request request : batch) {
+                request.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Sets the leaf index of every request by value, hashing and looking up each distinct value once.
+     */
+    private void resolveValues(MerkleTreeSnapshot version, List<Request> batch) {
+        Map<String, Integer> slots = new LinkedHashMap<>();
+        for (Request request : batch) {
+            if (request.kind == Kind.VALUE) slots.putIfAbsent(request.data, slots.size());
+        }
+        if (slots.isEmpty()) return;
+        List<byte[]> hashes = new ArrayList<>(slots.size());
+        for (String value : slots.keySet()) {
+            byte[] hash = new byte[version.hashLength()];
+            version.getHashFunction().hashUtf8(value, hash, 0);
+            hashes.add(hash);
+        }
+        int[] found = tree.firstLeavesWithHashes(Operation.PROOF, version, hashes);
+        for (Request request : batch) {
+            if (request.kind == Kind.VALUE) request.leafIndex = found[slots.get(request.data)];
+        }
+    }
+
+    private void failQueued(RuntimeException cause) {
+        for (Request request; (request = queue.poll()) != null; ) {
+            request.result.completeExceptionally(cause);
+        }
+    }
+
+    private enum Kind {
+        INDEX, VALUE, VERIFY
+    }
+
+    private static final class Request {
+        final Kind kind;
+        final String data;
+        final List<MerkleProof> proof;
+        final CompletableFuture<Object> result = new CompletableFuture<>();
+        // for value requests, resolved by the batch
+        int leafIndex;
+
+        Request(Kind kind, int leafIndex, String data, List<MerkleProof> proof) {
+            this.kind = kind;
+            this.leafIndex = leafIndex;
+            this.data = data;
+            this.proof = proof;
+        }
+    }
+}
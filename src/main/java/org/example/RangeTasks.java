@@ -0,0 +1,40 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Splits an index range into chunks and runs them on an executor, waiting for all of them.
+ */
+final class RangeTasks {
+
+    @FunctionalInterface
+    interface RangeTask {
+        void run(int from, int to);
+    }
+
+    private RangeTasks() {
+    }
+
+    /**
+     * Runs {@code task} over {@code [0, size)}. Ranges smaller than {@code threshold}, or runs
+     * without an executor, stay on the calling thread.
+     */
+    static void run(int size, int threshold, Executor executor, RangeTask task) {
+        if (executor == null || size < Math.max(threshold, 2)) {
+            task.run(0, size);
+            return;
+        }
+        int chunks = Math.min(Runtime.getRuntime().availableProcessors() * 4, size / Math.max(threshold / 4, 1));
+        int chunkSize = (size + chunks - 1) / Math.max(chunks, 1);
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int from = 0; from < size; from += chunkSize) {
+            final int start = from;
+            final int end = Math.min(size, from + chunkSize);
+            futures.add(CompletableFuture.runAsync(() -> task.run(start, end), executor));
+        }
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+    }
+}
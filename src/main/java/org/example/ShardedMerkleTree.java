@@ -0,0 +1,435 @@
+package org.example;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.InvalidParameterException;
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+import org.example.MerkleTreeMetrics.Operation;
+
+/**
+ * Tree whose leaves are split into shards of {@code arity^m} consecutive leaves, each a
+ * {@link MerkleTree} with its own lock, below a small top tree over the shard roots. Writers on
+ * different shards never wait for each other, and shards are built and updated in parallel on the
+ * configured executor, each on one thread.
+ * <p>
+ * A shard covers exactly one subtree of the unsharded tree. With several shards, the root of a
+ * partial last shard is lifted to the shard height by hashing it with itself, as an unsharded build
+ * does, so roots and proofs equal those of a {@link MerkleTree} over the same leaves. The top tree
+ * is kept up to date from the latest shard versions: only the paths above shards that changed are
+ * hashed again.
+ * <p>
+ * Appends never raise the shard count above the one given at construction. When they would, every
+ * {@code arity} neighbouring shards are merged into one a level higher, which hashes the merged
+ * leaves' ancestors once; shard heights double like the capacity of a growing array, so merges cost
+ * a constant number of hashes per appended leaf. Updates wait for a merge, proofs retry on the
+ * merged shards.
+ * <p>
+ * Off-heap shards hold memory until {@link #close()} is called; merged-away shards are closed by
+ * the merge.
+ */
+public class ShardedMerkleTree implements Closeable {
+
+    /**
+     * Fewest leaves per shard, so a tree built small and grown by appends keeps few shards.
+     */
+    public static final int MIN_SHARD_SIZE = 1 << 10;
+
+    private static final Logger logger = LogManager.getLogger(ShardedMerkleTree.class);
+    // lookup result for a shard that changed since the top tree was built
+    private static final int MOVED = -2;
+
+    // the shards and their height, replaced as a whole when appends add or merge shards
+    private static final class Layout {
+        final List<MerkleTree> shards;
+        final int shardHeight;
+        // leaves per shard, arity^shardHeight
+        final int shardSize;
+
+        Layout(List<MerkleTree> shards, int shardHeight, int shardSize) {
+            this.shards = shards;
+            this.shardHeight = shardHeight;
+            this.shardSize = shardSize;
+        }
+
+        /**
+         * Height shard roots are lifted to; a single shard is the whole tree and is not lifted.
+         */
+        int liftHeight() {
+            return shards.size() > 1 ? shardHeight : 0;
+        }
+    }
+
+    // the layout it was built for, the version number of every shard, their leaf count and the
+    // top tree over their lifted roots
+    private static final class Top {
+        final Layout layout;
+        final long[] versions;
+        final int size;
+        final MerkleTreeSnapshot tree;
+
+        Top(Layout layout, long[] versions, int size, MerkleTreeSnapshot tree) {
+            this.layout = layout;
+            this.versions = versions;
+            this.size = size;
+            this.tree = tree;
+        }
+    }
+
+    private final MerkleTreeConfig shardConfig;
+    private final MerkleTreeConfig topConfig;
+    private final HashFunction hashFunction;
+    private final int hashLength;
+    private final int arity;
+    private final int maxShards;
+    private final Executor executor;
+    // updates hold the read lock, merges the write lock
+    private final ReentrantReadWriteLock mergeLock = new ReentrantReadWriteLock();
+    private volatile Layout layout;
+    private volatile Top top;
+    // the tree behind top, changed only under topLock
+    private final Object topLock = new Object();
+    private MerkleTree topTree;
+
+    /**
+     * Splits {@code data} into at most {@code shardCount} shards, each covering the smallest whole
+     * subtree that holds {@code data.size() / shardCount} leaves and at least {@link #MIN_SHARD_SIZE}.
+     */
+    public ShardedMerkleTree(List<String> data, int shardCount, MerkleTreeConfig config) {
+        if (data == null || data.isEmpty()) throw new InvalidParameterException("Data list not expected to be empty!");
+        if (shardCount < 1 || Integer.bitCount(shardCount) != 1) {
+            throw new InvalidParameterException("Shard count must be a power of two, got " + shardCount);
+        }
+        this.hashFunction = config.getHashFunction();
+        this.hashLength = hashFunction.digestLength();
+        this.arity = MerkleTree.checkArity(config.getArity());
+        this.maxShards = shardCount;
+        this.executor = config.getExecutor();
+        this.shardConfig = config.toBuilder().executor(null).build();
+        this.topConfig = MerkleTreeConfig.builder().hashFunction(hashFunction).arity(arity).retainValues(false).build();
+        int perShard = (int) Math.max(MIN_SHARD_SIZE, (data.size() + (long) shardCount - 1) / shardCount);
+        int height = 0;
+        long size = 1;
+        while (size < perShard) {
+            size *= arity;
+            height++;
+        }
+        int shardSize = (int) size;
+        MerkleTree[] built = new MerkleTree[(int) ((data.size() + size - 1) / size)];
+        RangeTasks.run(built.length, 1, executor, (from, to) -> {
+            for (int s = from; s < to; s++) {
+                built[s] = new MerkleTree(data.subList(s * shardSize, (int) Math.min(data.size(), (long) (s + 1) * shardSize)), shardConfig);
+            }
+        });
+        this.layout = new Layout(List.of(built), height, shardSize);
+        logger.info("built sharded merkle tree of {} leaves in {} shards", data.size(), built.length);
+    }
+
+    public byte[] getRootHash() {
+        return top().tree.getRootHash();
+    }
+
+    public int size() {
+        return top().size;
+    }
+
+    public int shardCount() {
+        return layout.shards.size();
+    }
+
+    /**
+     * Returns the proof of the leaf at {@code leafIndex}: the proof within its shard, the lift of a
+     * partial shard and the proof of the shard root in the top tree, all read from one version.
+     */
+    public List<MerkleProof> getMerkleProof(int leafIndex) {
+        while (true) {
+            Top top = top();
+            Objects.checkIndex(leafIndex, top.size);
+            List<MerkleProof> proof = proofOf(top, leafIndex);
+            if (proof != null) return proof;
+        }
+    }
+
+    /**
+     * Returns the proof of the first leaf holding {@code data}, or an empty list when no leaf does.
+     */
+    public List<MerkleProof> getMerkleProof(String data) {
+        byte[] hash = new byte[hashLength];
+        hashFunction.hashUtf8(data, hash, 0);
+        retry:
+        while (true) {
+            Top top = top();
+            for (int s = 0; s < top.versions.length; s++) {
+                MerkleTree shard = top.layout.shards.get(s);
+                long expected = top.versions[s];
+                Integer local = readShard(top.layout, s, v -> v.getVersion() != expected
+                        ? MOVED : shard.firstLeavesWithHashes(Operation.PROOF, v, List.of(hash))[0]);
+                if (local == null || local == MOVED) continue retry;
+                if (local < 0) continue;
+                List<MerkleProof> proof = proofOf(top, s * top.layout.shardSize + local);
+                if (proof == null) continue retry;
+                return proof;
+            }
+            logger.debug("no leaf holds data {}", data);
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Returns the proof of {@code leafIndex}, or null when its shard changed since {@code top} was
+     * built and the caller has to retry on a newer one.
+     */
+    private List<MerkleProof> proofOf(Top top, int leafIndex) {
+        Layout layout = top.layout;
+        int shard = leafIndex / layout.shardSize;
+        List<MerkleProof> proof = readShard(layout, shard, version -> {
+            if (version.getVersion() != top.versions[shard]) return null;
+            List<MerkleProof> lower = new ArrayList<>(version.getMerkleProof(leafIndex % layout.shardSize));
+            byte[] node = version.getRootHash();
+            for (int level = version.levelCount() - 1; level < layout.liftHeight(); level++) {
+                // a lifted node is the last of its level and combined with itself
+                lower.add(new MerkleProof(node, MerkleProof.Direction.RIGHT));
+                node = lift(node);
+            }
+            return lower;
+        });
+        if (proof != null) proof.addAll(top.tree.getMerkleProof(shard));
+        return proof;
+    }
+
+    /**
+     * Returns the proof of the leaf at {@code leafIndex} as sibling groups; works for every arity.
+     */
+    public GroupProof getGroupProof(int leafIndex) {
+        while (true) {
+            Top top = top();
+            Objects.checkIndex(leafIndex, top.size);
+            int shardSize = top.layout.shardSize;
+            int shard = leafIndex / shardSize;
+            // lifted levels hold a single node per group, so they add no siblings
+            byte[] lower = readShard(top.layout, shard, version -> version.getVersion() != top.versions[shard]
+                    ? null : version.getGroupProof(leafIndex % shardSize).getSiblings());
+            if (lower == null) continue;
+            byte[] upper = top.tree.getGroupProof(shard).getSiblings();
+            byte[] siblings = Arrays.copyOf(lower, lower.length + upper.length);
+            System.arraycopy(upper, 0, siblings, lower.length, upper.length);
+            return new GroupProof(top.size, leafIndex, arity, hashLength, siblings);
+        }
+    }
+
+    /**
+     * Runs {@code reader} against the latest version of a shard of {@code layout}, or returns null
+     * when a merge has closed the shard since; the caller retries on the new layout.
+     */
+    private <T> T readShard(Layout layout, int shard, Function<MerkleTreeSnapshot, T> reader) {
+        try {
+            return layout.shards.get(shard).read(reader);
+        } catch (IllegalStateException e) {
+            if (this.layout == layout) throw e;
+            return null;
+        }
+    }
+
+    public boolean verifyMerkleProof(String data, List<MerkleProof> proofList) {
+        byte[] hash = new byte[hashLength];
+        hashFunction.hashUtf8(data, hash, 0);
+        MerkleProofVerifier.fold(hash, proofList, hashFunction);
+        return Arrays.equals(getRootHash(), hash);
+    }
+
+    /**
+     * Applies the new values of {@code modifiedLeaves}, see {@link MerkleTree#updateLeaves}. The
+     * leaves are grouped by shard and each shard is updated under its own lock, in parallel on
+     * {@code executors} when given; leaves outside the tree are ignored.
+     */
+    public void updateLeaves(List<MerkleNode> modifiedLeaves, ExecutorService executors) {
+        mergeLock.readLock().lock();
+        try {
+            Layout current = layout;
+            Map<Integer, List<MerkleNode>> byShard = new TreeMap<>();
+            for (MerkleNode leaf : modifiedLeaves) {
+                int shard = leaf.getIndex() / current.shardSize;
+                if (leaf.getIndex() < 0 || shard >= current.shards.size()) continue;
+                byShard.computeIfAbsent(shard, s -> new ArrayList<>())
+                        .add(new MerkleNode(leaf.getValue(), leaf.getHash(), leaf.getIndex() % current.shardSize));
+            }
+            List<Map.Entry<Integer, List<MerkleNode>>> batches = new ArrayList<>(byShard.entrySet());
+            RangeTasks.run(batches.size(), 1, executors, (from, to) -> {
+                for (int i = from; i < to; i++) {
+                    current.shards.get(batches.get(i).getKey()).updateLeaves(batches.get(i).getValue(), null);
+                }
+            });
+        } finally {
+            mergeLock.readLock().unlock();
+        }
+    }
+
+    public void append(String... newValues) {
+        appendAll(Arrays.asList(newValues));
+    }
+
+    /**
+     * Fills the last shard and opens new ones for the rest, first merging shards while the leaves
+     * would not fit in the configured shard count. Appends are serialized with each other but not
+     * with updates of other shards.
+     */
+    public synchronized void appendAll(List<String> newValues) {
+        long size = (long) layout.shardSize * (layout.shards.size() - 1) + layout.shards.get(layout.shards.size() - 1).size();
+        while ((size + newValues.size() + layout.shardSize - 1) / layout.shardSize > maxShards) {
+            merge();
+        }
+        Layout current = layout;
+        int shardSize = current.shardSize;
+        List<MerkleTree> grown = new ArrayList<>(current.shards);
+        MerkleTree last = grown.get(grown.size() - 1);
+        int from = Math.min(newValues.size(), shardSize - last.size());
+        last.appendAll(newValues.subList(0, from));
+        while (from < newValues.size()) {
+            int to = (int) Math.min(newValues.size(), (long) from + shardSize);
+            grown.add(new MerkleTree(newValues.subList(from, to), shardConfig));
+            from = to;
+        }
+        layout = new Layout(List.copyOf(grown), current.shardHeight, shardSize);
+    }
+
+    /**
+     * Merges every {@code arity} neighbouring shards into one a level higher: the first of them
+     * takes the leaf hashes of the others, which are closed. Leaf values are not carried over.
+     */
+    private void merge() {
+        mergeLock.writeLock().lock();
+        try {
+            Layout current = layout;
+            List<MerkleTree> merged = new ArrayList<>();
+            List<MerkleTree> retired = new ArrayList<>();
+            for (int first = 0; first < current.shards.size(); first += arity) {
+                MerkleTree shard = current.shards.get(first);
+                for (int s = first + 1; s < Math.min(first + arity, current.shards.size()); s++) {
+                    MerkleTree next = current.shards.get(s);
+                    shard.appendLeafHashes(next.read(MerkleTreeSnapshot::leafHashes));
+                    retired.add(next);
+                }
+                merged.add(shard);
+            }
+            layout = new Layout(List.copyOf(merged), current.shardHeight + 1, current.shardSize * arity);
+            logger.info("merged {} shards into {} of {} leaves", current.shards.size(), merged.size(), layout.shardSize);
+            for (MerkleTree shard : retired) {
+                shard.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            mergeLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the top tree over the latest shard versions, bringing it up to date if any of them
+     * changed. Only version numbers are compared, so no shard is copied; the roots of changed and
+     * new shards are written to the top tree, which hashes their paths again. Readers that find it
+     * stale bring it up to date one at a time.
+     */
+    private Top top() {
+        Top top = this.top;
+        if (top != null && isLatest(top, layout)) return top;
+        synchronized (topLock) {
+            while (true) {
+                Layout current = layout;
+                top = this.top;
+                if (top != null && isLatest(top, current)) return top;
+                try {
+                    top = update(top, current);
+                } catch (IllegalStateException e) {
+                    // a merge closed a shard of the layout read; start over from the new one
+                    if (layout == current) throw e;
+                    continue;
+                }
+                this.top = top;
+                return top;
+            }
+        }
+    }
+
+    /**
+     * Reads the lifted root of every shard of {@code current} and writes those that differ from
+     * {@code top} to the top tree. A merge or the step from one shard to several changes every
+     * lifted root and rebuilds it.
+     */
+    private Top update(Top top, Layout current) {
+        int count = current.shards.size();
+        long[] versions = new long[count];
+        int[] size = new int[1];
+        List<byte[]> roots = new ArrayList<>(count);
+        for (int s = 0; s < count; s++) {
+            int shard = s;
+            roots.add(current.shards.get(s).read(version -> {
+                versions[shard] = version.getVersion();
+                if (shard == count - 1) size[0] = shard * current.shardSize + version.size();
+                byte[] node = version.getRootHash();
+                for (int level = version.levelCount() - 1; level < current.liftHeight(); level++) {
+                    node = lift(node);
+                }
+                return node;
+            }));
+        }
+        if (top == null || top.layout.shardHeight != current.shardHeight || (top.versions.length > 1) != (count > 1)) {
+            topTree = MerkleTree.ofLeafHashes(roots, topConfig);
+        } else {
+            List<MerkleNode> changed = new ArrayList<>();
+            for (int s = 0; s < top.versions.length; s++) {
+                if (versions[s] != top.versions[s]) changed.add(MerkleNode.ofHash(s, roots.get(s)));
+            }
+            if (!changed.isEmpty()) topTree.updateLeaves(changed, null);
+            topTree.appendLeafHashes(roots.subList(top.versions.length, count));
+        }
+        return new Top(current, versions, size[0], topTree.snapshot());
+    }
+
+    private static boolean isLatest(Top top, Layout current) {
+        if (top.layout != current) return false;
+        for (int s = 0; s < top.versions.length; s++) {
+            if (current.shards.get(s).version() != top.versions[s]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Closes every shard, releasing the memory of off-heap shards. The tree must not be used
+     * afterwards. Every shard is closed even if one fails; the first failure is thrown.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        IOException failure = null;
+        // later reads rebuild the top tree from the closed shards and fail there
+        top = null;
+        for (MerkleTree shard : layout.shards) {
+            try {
+                shard.close();
+            } catch (IOException e) {
+                if (failure == null) failure = e;
+                else failure.addSuppressed(e);
+            }
+        }
+        if (failure != null) throw failure;
+    }
+
+    /**
+     * Hashes a group made of {@code node} alone, i.e. of {@code node} repeated {@code arity} times.
+     */
+    private byte[] lift(byte[] node) {
+        byte[] group = new byte[(arity + 1) * hashLength];
+        for (int j = 0; j < arity; j++) {
+            System.arraycopy(node, 0, group, j * hashLength, hashLength);
+        }
+        MerkleTree.hashGroup(hashFunction, arity, group, group, arity * hashLength);
+        return Arrays.copyOfRange(group, arity * hashLength, group.length);
+    }
+}
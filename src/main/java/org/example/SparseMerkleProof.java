@@ -0,0 +1,79 @@
+package org.example;
+
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Proof that a key holds a value in a {@link SparseMerkleTree}, or that it is absent. Most of the
+ * siblings on a path are empty subtrees; only the others are carried, and bit {@code h} of
+ * {@link #getNonEmpty()}, counted from the most significant bit of its first byte, tells whether
+ * the sibling at height {@code h} is one of them.
+ */
+@Getter
+public class SparseMerkleProof {
+
+    private final byte[] keyHash;
+    // hash of the value, null for a proof of absence
+    private final byte[] valueHash;
+    private final byte[] nonEmpty;
+    // hashes of the non-empty siblings back to back, lowest height first
+    private final byte[] siblings;
+
+    public SparseMerkleProof(byte[] keyHash, byte[] valueHash, byte[] nonEmpty, byte[] siblings) {
+        this.keyHash = keyHash;
+        this.valueHash = valueHash;
+        this.nonEmpty = nonEmpty;
+        this.siblings = siblings;
+    }
+
+    public boolean isInclusion() {
+        return valueHash != null;
+    }
+
+    /**
+     * Like {@link #verify(byte[], byte[], byte[], HashFunction)} for a key and value stored with
+     * {@link SparseMerkleTree#put(String, String)}; {@code value} is null for an absence proof.
+     */
+    public boolean verify(String key, String value, byte[] expectedRoot, HashFunction hashFunction) {
+        return verify(key.getBytes(StandardCharsets.UTF_8), value == null ? null : value.getBytes(StandardCharsets.UTF_8),
+                expectedRoot, hashFunction);
+    }
+
+    /**
+     * Checks the proof against {@code expectedRoot}: for an inclusion proof that the key holds
+     * {@code value}, for an absence proof that the key is not in the tree ({@code value} ignored).
+     */
+    public boolean verify(byte[] key, byte[] value, byte[] expectedRoot, HashFunction hashFunction) {
+        int length = hashFunction.digestLength();
+        int depth = 8 * length;
+        if (!Arrays.equals(hashFunction.hash(key), keyHash) || nonEmpty.length * 8 != depth || siblings.length % length != 0) {
+            return false;
+        }
+        byte[] node = new byte[length];
+        if (isInclusion()) {
+            if (value == null || !Arrays.equals(hashFunction.hash(value), valueHash)) return false;
+            hashFunction.combine(keyHash, 0, valueHash, 0, node, 0);
+        }
+        byte[] empty = new byte[length];
+        int cursor = 0;
+        for (int height = 0; height < depth; height++) {
+            byte[] sibling = empty;
+            int at = 0;
+            if (SparseMerkleTree.bit(nonEmpty, height) == 1) {
+                if (cursor == siblings.length) return false;
+                sibling = siblings;
+                at = cursor;
+                cursor += length;
+            }
+            if (SparseMerkleTree.bit(keyHash, depth - 1 - height) == 0) {
+                hashFunction.combine(node, 0, sibling, at, node, 0);
+            } else {
+                hashFunction.combine(sibling, at, node, 0, node, 0);
+            }
+            hashFunction.combine(empty, 0, empty, 0, empty, 0);
+        }
+        return cursor == siblings.length && Arrays.equals(node, expectedRoot);
+    }
+}
@@ -0,0 +1,302 @@
+package org.example;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Keyed Merkle tree over the whole key space: the leaf of a key sits at the position given by
+ * the bits of its hash, in a tree as deep as the digest has bits. A present leaf hashes as
+ * {@code combine(hash(key), hash(value))}, an absent one is all zeroes, and an empty subtree of
+ * height {@code h} has the precomputed hash {@code empty[h]}.
+ * <p>
+ * Only subtrees holding at least two keys are materialized, as branch nodes; a subtree holding
+ * a single key is its leaf, whose hash is lifted through the empty siblings on demand. Insert,
+ * update and delete touch one path of branch nodes and hash O(depth) nodes.
+ */
+public class SparseMerkleTree {
+
+    private static final Logger logger = LogManager.getLogger(SparseMerkleTree.class);
+
+    private final HashFunction hashFunction;
+    private final int hashLength;
+    private final int depth;
+    private final byte[][] empty;
+    private Node root;
+    private int size;
+
+    protected final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public SparseMerkleTree() {
+        this(new Hash_SHA_256());
+    }
+
+    public SparseMerkleTree(HashFunction hashFunction) {
+        this.hashFunction = hashFunction;
+        this.hashLength = hashFunction.digestLength();
+        this.depth = 8 * hashLength;
+        this.empty = new byte[depth + 1][];
+        empty[0] = new byte[hashLength];
+        for (int height = 1; height <= depth; height++) {
+            empty[height] = hashFunction.combine(empty[height - 1], empty[height - 1]);
+        }
+    }
+
+    public void put(String key, String value) {
+        put(key.getBytes(StandardCharsets.UTF_8), value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Inserts {@code key} or replaces its value.
+     */
+    public void put(byte[] key, byte[] value) {
+        Leaf leaf = new Leaf(hashFunction.hash(key), value.clone(), hashFunction.hash(value));
+        try {
+            lock.writeLock().lock();
+            root = insert(root, leaf);
+            logger.debug("sparse merkle tree holds {} keys", size);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public byte[] get(byte[] key) {
+        byte[] keyHash = hashFunction.hash(key);
+        try {
+            lock.readLock().lock();
+            Leaf leaf = find(keyHash);
+            return leaf == null ? null : leaf.value.clone();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public String get(String key) {
+        byte[] value = get(key.getBytes(StandardCharsets.UTF_8));
+        return value == null ? null : new String(value, StandardCharsets.UTF_8);
+    }
+
+    public boolean remove(String key) {
+        return remove(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Deletes {@code key}; returns false when it was not present.
+     */
+    public boolean remove(byte[] key) {
+        byte[] keyHash = hashFunction.hash(key);
+        try {
+            lock.writeLock().lock();
+            int before = size;
+            root = delete(root, keyHash);
+            return size < before;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        try {
+            lock.readLock().lock();
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public byte[] getRootHash() {
+        try {
+            lock.readLock().lock();
+            return hashAt(root, depth).clone();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public SparseMerkleProof getProof(String key) {
+        return getProof(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns a proof of inclusion when {@code key} is present and a proof of absence otherwise.
+     */
+    public SparseMerkleProof getProof(byte[] key) {
+        byte[] keyHash = hashFunction.hash(key);
+        try {
+            lock.readLock().lock();
+            byte[][] siblings = new byte[depth][];
+            Leaf found = null;
+            Node node = root;
+            int height = depth;
+            while (node != null) {
+                int diverge = divergenceHeight(keyHash, node.keyHash);
+                if (diverge > node.height) {
+                    // the key leaves the node's subtree above it, the whole subtree is a sibling
+                    siblings[diverge - 1] = hashAt(node, diverge - 1);
+                    break;
+                }
+                if (node instanceof Leaf) {
+                    found = (Leaf) node;
+                    break;
+                }
+                Branch branch = (Branch) node;
+                int side = bit(keyHash, depth - branch.height);
+                Node sibling = side == 0 ? branch.right : branch.left;
+                siblings[branch.height - 1] = hashAt(sibling, branch.height - 1);
+                node = side == 0 ? branch.left : branch.right;
+                height = branch.height - 1;
+            }
+            byte[] nonEmpty = new byte[depth / 8];
+            byte[] packed = new byte[depth * hashLength];
+            int count = 0;
+            for (int h = 0; h < depth; h++) {
+                if (siblings[h] != null) {
+                    nonEmpty[h >>> 3] |= (byte) (0x80 >>> (h & 7));
+                    System.arraycopy(siblings[h], 0, packed, count++ * hashLength, hashLength);
+                }
+            }
+            logger.debug("sparse proof below height {} with {} non-empty siblings", height, count);
+            return new SparseMerkleProof(keyHash, found == null ? null : found.valueHash.clone(), nonEmpty,
+                    Arrays.copyOf(packed, count * hashLength));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public HashFunction getHashFunction() {
+        return hashFunction;
+    }
+
+    private Leaf find(byte[] keyHash) {
+        Node node = root;
+        while (node instanceof Branch) {
+            Branch branch = (Branch) node;
+            node = bit(keyHash, depth - branch.height) == 0 ? branch.left : branch.right;
+        }
+        return node != null && Arrays.equals(node.keyHash, keyHash) ? (Leaf) node : null;
+    }
+
+    private Node insert(Node node, Leaf leaf) {
+        if (node == null) {
+            size++;
+            return leaf;
+        }
+        if (node instanceof Leaf && Arrays.equals(node.keyHash, leaf.keyHash)) {
+            return leaf;
+        }
+        int diverge = divergenceHeight(leaf.keyHash, node.keyHash);
+        if (diverge > node.height) {
+            size++;
+            return bit(leaf.keyHash, depth - diverge) == 0 ? branch(diverge, leaf, node) : branch(diverge, node, leaf);
+        }
+        Branch branch = (Branch) node;
+        return bit(leaf.keyHash, depth - branch.height) == 0
+                ? branch(branch.height, insert(branch.left, leaf), branch.right)
+                : branch(branch.height, branch.left, insert(branch.right, leaf));
+    }
+
+    private Node delete(Node node, byte[] keyHash) {
+        if (node == null) return null;
+        if (node instanceof Leaf) {
+            if (!Arrays.equals(node.keyHash, keyHash)) return node;
+            size--;
+            return null;
+        }
+        Branch branch = (Branch) node;
+        if (divergenceHeight(keyHash, branch.keyHash) > branch.height) return node;
+        Node left = branch.left;
+        Node right = branch.right;
+        if (bit(keyHash, depth - branch.height) == 0) {
+            left = delete(left, keyHash);
+        } else {
+            right = delete(right, keyHash);
+        }
+        if (left == branch.left && right == branch.right) return node;
+        // a branch left with a single subtree collapses into it
+        if (left == null) return right;
+        if (right == null) return left;
+        return branch(branch.height, left, right);
+    }
+
+    private Branch branch(int height, Node left, Node right) {
+        byte[] hash = new byte[hashLength];
+        hashFunction.combine(hashAt(left, height - 1), 0, hashAt(right, height - 1), 0, hash, 0);
+        return new Branch(height, left, right, hash);
+    }
+
+    /**
+     * Returns the hash of the subtree of height {@code height} that holds nothing but {@code node}.
+     */
+    private byte[] hashAt(Node node, int height) {
+        if (node == null) return empty[height];
+        if (node.height == height) return node.hash;
+        byte[] hash = node.hash.clone();
+        for (int h = node.height; h < height; h++) {
+            if (bit(node.keyHash, depth - 1 - h) == 0) {
+                hashFunction.combine(hash, 0, empty[h], 0, hash, 0);
+            } else {
+                hashFunction.combine(empty[h], 0, hash, 0, hash, 0);
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Height of the lowest subtree holding both key hashes, {@code 0} when they are equal.
+     */
+    private int divergenceHeight(byte[] a, byte[] b) {
+        for (int i = 0; i < hashLength; i++) {
+            int diff = (a[i] ^ b[i]) & 0xff;
+            if (diff != 0) {
+                return depth - (8 * i + Integer.numberOfLeadingZeros(diff) - 24);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Bit {@code index} of {@code bytes}, counted from the most significant bit of the first byte.
+     * The child taken below a node of height {@code h} is bit {@code depth - h} of the key hash.
+     */
+    static int bit(byte[] bytes, int index) {
+        return (bytes[index >>> 3] >>> (7 - (index & 7))) & 1;
+    }
+
+    private abstract static class Node {
+        // natural height of the node and its hash there; any key hash below it, for its path bits
+        final int height;
+        final byte[] hash;
+        final byte[] keyHash;
+
+        Node(int height, byte[] hash, byte[] keyHash) {
+            this.height = height;
+            this.hash = hash;
+            this.keyHash = keyHash;
+        }
+    }
+
+    private final class Leaf extends Node {
+        final byte[] value;
+        final byte[] valueHash;
+
+        Leaf(byte[] keyHash, byte[] value, byte[] valueHash) {
+            super(0, hashFunction.combine(keyHash, valueHash), keyHash);
+            this.value = value;
+            this.valueHash = valueHash;
+        }
+    }
+
+    private static final class Branch extends Node {
+        final Node left;
+        final Node right;
+
+        Branch(int height, Node left, Node right, byte[] hash) {
+            super(height, hash, left.keyHash);
+            this.left = left;
+            this.right = right;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package org.example;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Computes the root of a tree in one pass over its leaves, keeping only the roots of the
+ * complete subtrees seen so far: one per set bit of the leaf count, so at most 64 hashes.
+ * The root equals the one of a {@link MerkleTree} built over the same values with the same
+ * {@link HashFunction}, including the duplication of odd nodes.
+ */
+public class StreamingMerkleBuilder {
+
+    private static final int MAX_HEIGHT = 64;
+
+    private final HashFunction hashFunction;
+    private final int hashLength;
+    private final LevelSink sink;
+    // pending[i] is the root of a complete subtree of height heights[i]; heights strictly decrease
+    private final byte[][] pending = new byte[MAX_HEIGHT][];
+    private final int[] heights = new int[MAX_HEIGHT];
+    private int depth;
+    private long count;
+
+    public StreamingMerkleBuilder() {
+        this(new Hash_SHA_256());
+    }
+
+    public StreamingMerkleBuilder(HashFunction hashFunction) {
+        this(hashFunction, null);
+    }
+
+    /**
+     * @param sink receives every node hash of the tree level by level, e.g. a {@link FileLevelSink};
+     *             may be {@code null}
+     */
+    public StreamingMerkleBuilder(HashFunction hashFunction, LevelSink sink) {
+        this.hashFunction = hashFunction;
+        this.hashLength = hashFunction.digestLength();
+        this.sink = sink;
+        for (int i = 0; i < MAX_HEIGHT; i++) {
+            pending[i] = new byte[hashLength];
+        }
+    }
+
+    public static byte[] root(Iterator<String> values, HashFunction hashFunction) {
+        StreamingMerkleBuilder builder = new StreamingMerkleBuilder(hashFunction);
+        values.forEachRemaining(builder::add);
+        return builder.finish();
+    }
+
+    public static byte[] root(Stream<byte[]> records, HashFunction hashFunction) {
+        StreamingMerkleBuilder builder = new StreamingMerkleBuilder(hashFunction);
+        records.forEachOrdered(builder::add);
+        return builder.finish();
+    }
+
+    public void add(String value) {
+        hashFunction.hashUtf8(value, pending[depth], 0);
+        push();
+    }
+
+    public void add(byte[] record) {
+        add(record, 0, record.length);
+    }
+
+    public void add(byte[] record, int offset, int length) {
+        hashFunction.hash(record, offset, length, pending[depth], 0);
+        push();
+    }
+
+    /**
+     * Adds a leaf whose hash has already been computed.
+     */
+    public void addLeafHash(byte[] hash, int offset) {
+        System.arraycopy(hash, offset, pending[depth], 0, hashLength);
+        push();
+    }
+
+    /**
+     * Adds every line of a UTF-8 text stream as one leaf, like a tree built from its lines.
+     */
+    public void addLines(InputStream in) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16);
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            add(line);
+        }
+    }
+
+    /**
+     * Adds consecutive records of {@code recordLength} bytes; a shorter last record is added as is.
+     */
+    public void addRecords(InputStream in, int recordLength) throws IOException {
+        byte[] record = new byte[recordLength];
+        int read;
+        while ((read = in.readNBytes(record, 0, recordLength)) > 0) {
+            add(record, 0, read);
+        }
+    }
+
+    public long count() {
+        return count;
+    }
+
+    /**
+     * Returns the root over every leaf added so far. The builder must not be used afterwards.
+     */
+    public byte[] finish() {
+        if (count == 0) throw new IllegalStateException("no leaves were added");
+        int top = depth - 1;
+        byte[] carry = pending[top];
+        int height = heights[top];
+        for (int i = top - 1; i >= 0; i--) {
+            // the trailing subtree is the last, even node of its level until it meets its left neighbour
+            while (height < heights[i]) {
+                hashFunction.combine(carry, 0, carry, 0, carry, 0);
+                emit(++height, carry);
+            }
+            hashFunction.combine(pending[i], 0, carry, 0, carry, 0);
+            emit(++height, carry);
+        }
+        return carry.clone();
+    }
+
+    private void push() {
+        heights[depth] = 0;
+        emit(0, pending[depth]);
+        depth++;
+        count++;
+        while (depth > 1 && heights[depth - 1] == heights[depth - 2]) {
+            byte[] left = pending[depth - 2];
+            hashFunction.combine(left, 0, pending[depth - 1], 0, left, 0);
+            heights[depth - 2]++;
+            depth--;
+            emit(heights[depth - 1], left);
+        }
+    }
+
+    private void emit(int level, byte[] hash) {
+        if (sink == null) return;
+        try {
+            sink.accept(level, hash, 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
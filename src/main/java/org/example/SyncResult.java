@@ -0,0 +1,29 @@
+package org.example;
+
+import lombok.Getter;
+
+/**
+ * What one {@link TreeSyncClient#sync()} changed in the replica.
+ */
+@Getter
+public class SyncResult {
+
+    private final int updatedLeaves;
+    private final int appendedLeaves;
+    private final int removedLeaves;
+    // false when the replica was changed by someone else during the sync
+    private final boolean rootMatches;
+
+    public SyncResult(int updatedLeaves, int appendedLeaves, int removedLeaves, boolean rootMatches) {
+        this.updatedLeaves = updatedLeaves;
+        this.appendedLeaves = appendedLeaves;
+        this.removedLeaves = removedLeaves;
+        this.rootMatches = rootMatches;
+    }
+
+    @Override
+    public String toString() {
+        return "SyncResult{updated=" + updatedLeaves + ", appended=" + appendedLeaves
+                + ", removed=" + removedLeaves + ", rootMatches=" + rootMatches + '}';
+    }
+}
@@ -0,0 +1,19 @@
+package org.example;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Carries the frames of the tree sync protocol between a {@link TreeSyncClient} and a
+ * {@link TreeSyncServer}, e.g. over a socket or a message queue. Requests may be issued
+ * concurrently; each completes with the response frame the server produced for it.
+ */
+public interface SyncTransport extends Closeable {
+
+    CompletableFuture<byte[]> exchange(byte[] request);
+
+    @Override
+    default void close() throws IOException {
+    }
+}
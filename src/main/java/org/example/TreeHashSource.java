@@ -0,0 +1,28 @@
+package org.example;
+
+/**
+ * Read access to the node hashes of a tree by level and position, level 0 being the leaves.
+ * Implemented by {@link MerkleTree} and by stand-ins for trees held elsewhere, such as a replica
+ * reached over the network; one call per level lets a comparison batch its requests.
+ */
+public interface TreeHashSource {
+
+    /**
+     * Number of leaves.
+     */
+    int size();
+
+    int hashLength();
+
+    /**
+     * Number of children of an inner node.
+     */
+    default int arity() {
+        return 2;
+    }
+
+    /**
+     * Returns the hashes of the given nodes of {@code level} back to back, in the order of {@code indices}.
+     */
+    byte[] nodeHashes(int level, int[] indices);
+}
@@ -0,0 +1,247 @@
+package org.example;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidParameterException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.IntStream;
+
+/**
+ * Brings a replica {@link MerkleTree} up to date with a tree served by a {@link TreeSyncServer}.
+ * A sync compares the leaves both trees hold top-down with {@link MerkleTreeDiff#diffPrefix}, one
+ * round trip per level, and then fetches only the differing leaves in chunks, applying each chunk
+ * as it arrives: changed leaves through {@link MerkleTree#updateLeaves}, new ones through appends,
+ * and a longer replica is truncated. Leaves past the replica are requested as ranges, so a long
+ * tail is never listed leaf by leaf. At most {@code window} chunk requests are in flight, so neither side holds more
+ * than {@code window * chunkSize} leaves at a time. A sync of d differences costs O(d log n)
+ * node hashes plus the d leaves, whatever the size of the tree.
+ */
+public class TreeSyncClient {
+
+    public static final int DEFAULT_CHUNK_SIZE = 1024;
+    public static final int DEFAULT_WINDOW = 4;
+
+    private static final Logger logger = LogManager.getLogger(TreeSyncClient.class);
+
+    private final MerkleTree replica;
+    private final SyncTransport transport;
+    private final int chunkSize;
+    private final int window;
+
+    public TreeSyncClient(MerkleTree replica, SyncTransport transport) {
+        this(replica, transport, DEFAULT_CHUNK_SIZE, DEFAULT_WINDOW);
+    }
+
+    public TreeSyncClient(MerkleTree replica, SyncTransport transport, int chunkSize, int window) {
+        if (chunkSize < 1 || window < 1) {
+            throw new InvalidParameterException("Chunk size and window must be positive, got " + chunkSize + " and " + window);
+        }
+        this.replica = replica;
+        this.transport = transport;
+        this.chunkSize = chunkSize;
+        this.window = window;
+    }
+
+    /**
+     * Makes the replica equal to the version of the remote tree current when the sync starts.
+     */
+    public SyncResult sync() throws IOException {
+        ByteBuffer opened = call(new byte[]{TreeSyncProtocol.OPEN});
+        long session = opened.getLong();
+        try {
+            RemoteTree remote = new RemoteTree(session, opened.getInt(), opened.getInt(), opened.getInt());
+            byte[] root = new byte[remote.hashLength];
+            opened.get(root);
+            if (remote.hashLength != replica.hashLength() || remote.arity != replica.arity()) {
+                throw new IOException("remote tree has " + remote.hashLength + "-byte hashes and arity " + remote.arity
+                        + ", the replica " + replica.hashLength() + " and " + replica.arity());
+            }
+            int[] differing;
+            try {
+                differing = replica.diffPrefix(remote);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            int removed = 0;
+            if (replica.size() > remote.size) {
+                removed = replica.size() - remote.size;
+                replica.truncate(remote.size);
+            }
+            int[] applied = fetch(session, differing, replica.size(), remote.size);
+            SyncResult result = new SyncResult(applied[0], applied[1], removed, Arrays.equals(root, replica.getRootHash()));
+            logger.info("synced replica with session {}: {}", session, result);
+            return result;
+        } finally {
+            closeSession(session);
+        }
+    }
+
+    private static final class Chunk {
+        final int[] indices;
+        final CompletableFuture<byte[]> response;
+
+        Chunk(int[] indices, CompletableFuture<byte[]> response) {
+            this.indices = indices;
+            this.response = response;
+        }
+    }
+
+    /**
+     * Requests the {@code differing} leaves and then the leaves from {@code baseSize} to
+     * {@code remoteSize} chunk by chunk, keeping up to {@code window} requests in flight, and
+     * applies the chunks in order. Returns the number of updated and appended leaves.
+     */
+    private int[] fetch(long session, int[] differing, int baseSize, int remoteSize) throws IOException {
+        int[] applied = new int[2];
+        ArrayDeque<Chunk> inFlight = new ArrayDeque<>();
+        int next = 0;
+        int tail = baseSize;
+        while (next < differing.length || tail < remoteSize || !inFlight.isEmpty()) {
+            while ((next < differing.length || tail < remoteSize) && inFlight.size() < window) {
+                int[] indices;
+                ByteBuffer request;
+                if (next < differing.length) {
+                    indices = Arrays.copyOfRange(differing, next, Math.min(differing.length, next + chunkSize));
+                    request = TreeSyncProtocol.request(TreeSyncProtocol.LEAVES, session, Integer.BYTES * (1 + indices.length));
+                    TreeSyncProtocol.putIndices(request, indices);
+                    next += indices.length;
+                } else {
+                    int to = Math.min(remoteSize, tail + Math.min(chunkSize, TreeSyncProtocol.MAX_RANGE));
+                    indices = IntStream.range(tail, to).toArray();
+                    request = TreeSyncProtocol.request(TreeSyncProtocol.LEAF_RANGE, session, 2 * Integer.BYTES)
+                            .putInt(tail).putInt(to);
+                    tail = to;
+                }
+                inFlight.add(new Chunk(indices, transport.exchange(request.array())));
+            }
+            Chunk chunk = inFlight.poll();
+            apply(chunk.indices, response(await(chunk.response)), baseSize, applied);
+        }
+        return applied;
+    }
+
+    private void apply(int[] indices, ByteBuffer leaves, int baseSize, int[] applied) throws IOException {
+        List<MerkleNode> updates = new ArrayList<>();
+        List<String> values = new ArrayList<>();
+        List<byte[]> hashes = new ArrayList<>();
+        for (int index : indices) {
+            byte kind = leaves.get();
+            byte[] bytes = new byte[leaves.getInt()];
+            leaves.get(bytes);
+            String value = kind == TreeSyncProtocol.VALUE ? new String(bytes, StandardCharsets.UTF_8) : null;
+            if (index < baseSize) {
+                updates.add(value != null ? new MerkleNode(value, null, index) : MerkleNode.ofHash(index, bytes));
+                continue;
+            }
+            // appended leaves are contiguous; a run of values or of hashes is appended at once
+            if (value != null ? !hashes.isEmpty() : !values.isEmpty()) appendRun(values, hashes, applied);
+            if (value != null) {
+                values.add(value);
+            } else {
+                hashes.add(bytes);
+            }
+        }
+        appendRun(values, hashes, applied);
+        if (!updates.isEmpty()) {
+            replica.updateLeaves(updates, null);
+            applied[0] += updates.size();
+        }
+    }
+
+    private void appendRun(List<String> values, List<byte[]> hashes, int[] applied) {
+        if (!values.isEmpty()) replica.appendAll(values);
+        if (!hashes.isEmpty()) replica.appendLeafHashes(hashes);
+        applied[1] += values.size() + hashes.size();
+        values.clear();
+        hashes.clear();
+    }
+
+    private void closeSession(long session) {
+        try {
+            call(TreeSyncProtocol.request(TreeSyncProtocol.CLOSE, session, 0).array());
+        } catch (IOException e) {
+            logger.debug("could not close sync session {}", session, e);
+        }
+    }
+
+    private ByteBuffer call(byte[] request) throws IOException {
+        return response(await(transport.exchange(request)));
+    }
+
+    private static byte[] await(CompletableFuture<byte[]> response) throws IOException {
+        try {
+            return response.join();
+        } catch (CompletionException e) {
+            throw new IOException("sync request failed", e.getCause());
+        }
+    }
+
+    private static ByteBuffer response(byte[] frame) throws IOException {
+        ByteBuffer response = ByteBuffer.wrap(frame);
+        if (response.get() != TreeSyncProtocol.OK) {
+            throw new IOException("sync server answered: " + new String(frame, 1, frame.length - 1, StandardCharsets.UTF_8));
+        }
+        return response;
+    }
+
+    /**
+     * The remote tree of one session, read level by level for {@link MerkleTreeDiff}.
+     */
+    private final class RemoteTree implements TreeHashSource {
+
+        private final long session;
+        private final int size;
+        private final int hashLength;
+        private final int arity;
+
+        RemoteTree(long session, int size, int hashLength, int arity) {
+            this.session = session;
+            this.size = size;
+            this.hashLength = hashLength;
+            this.arity = arity;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public int hashLength() {
+            return hashLength;
+        }
+
+        @Override
+        public int arity() {
+            return arity;
+        }
+
+        @Override
+        public byte[] nodeHashes(int level, int[] indices) {
+            ByteBuffer request = TreeSyncProtocol.request(TreeSyncProtocol.NODE_HASHES, session, Integer.BYTES * (2 + indices.length));
+            request.putInt(level);
+            TreeSyncProtocol.putIndices(request, indices);
+            try {
+                ByteBuffer response = call(request.array());
+                if (response.remaining() != indices.length * hashLength) {
+                    throw new IOException("expected " + indices.length + " hashes at level " + level);
+                }
+                byte[] hashes = new byte[response.remaining()];
+                response.get(hashes);
+                return hashes;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package org.example;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Frames of the tree sync protocol, all big-endian. A request starts with its operation and,
+ * except for {@code OPEN}, the session it belongs to; a response starts with a status byte and
+ * an error response carries a UTF-8 message.
+ * <pre>
+ * OPEN                                    -> session long, leaf count, hash length, arity, root hash
+ * NODE_HASHES session level count indices -> the hashes of the nodes, back to back
+ * LEAVES      session count indices       -> per leaf: kind byte, length int, UTF-8 value or leaf hash
+ * LEAF_RANGE  session from to             -> the leaves from {@code from} to {@code to} - 1, as LEAVES
+ * CLOSE       session                     -> nothing
+ * </pre>
+ * A session pins one version of the served tree, so every answer within it is consistent.
+ */
+final class TreeSyncProtocol {
+
+    static final byte OPEN = 1;
+    static final byte NODE_HASHES = 2;
+    static final byte LEAVES = 3;
+    static final byte CLOSE = 4;
+    static final byte LEAF_RANGE = 5;
+
+    // most leaves one LEAF_RANGE request may ask for
+    static final int MAX_RANGE = 1 << 16;
+
+    static final byte OK = 0;
+    static final byte ERROR = 1;
+
+    static final byte HASH = 0;
+    static final byte VALUE = 1;
+
+    private TreeSyncProtocol() {
+    }
+
+    /**
+     * Returns a request frame with room for {@code payload} bytes after the operation and session.
+     */
+    static ByteBuffer request(byte operation, long session, int payload) {
+        return ByteBuffer.allocate(1 + Long.BYTES + payload).put(operation).putLong(session);
+    }
+
+    static void putIndices(ByteBuffer frame, int[] indices) {
+        frame.putInt(indices.length);
+        for (int index : indices) {
+            frame.putInt(index);
+        }
+    }
+
+    static int[] getIndices(ByteBuffer frame) {
+        int count = frame.getInt();
+        if (count < 0 || count > frame.remaining() / Integer.BYTES) {
+            throw new IllegalArgumentException("bad index count " + count);
+        }
+        int[] indices = new int[count];
+        for (int j = 0; j < count; j++) {
+            indices[j] = frame.getInt();
+        }
+        return indices;
+    }
+
+    /**
+     * Reads the {@code from} and {@code to} of a range request and returns the positions in it,
+     * checking that the range lies within {@code size} leaves and holds at most {@link #MAX_RANGE}.
+     */
+    static int[] getRange(ByteBuffer frame, int size) {
+        int from = frame.getInt();
+        int to = frame.getInt();
+        if (from < 0 || from > to || to > size || to - from > MAX_RANGE) {
+            throw new IllegalArgumentException("bad leaf range [" + from + ", " + to + ") of " + size);
+        }
+        int[] indices = new int[to - from];
+        for (int j = 0; j < indices.length; j++) {
+            indices[j] = from + j;
+        }
+        return indices;
+    }
+
+    static byte[] error(String message) {
+        byte[] text = String.valueOf(message).getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(1 + text.length).put(ERROR).put(text).array();
+    }
+}
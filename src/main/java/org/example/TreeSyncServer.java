@@ -0,0 +1,189 @@
+package org.example;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidParameterException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Serves a {@link MerkleTree} to {@link TreeSyncClient}s through any {@link SyncTransport}: the
+ * transport passes every request frame to {@link #handle} and sends back what it returns. Each
+ * client session reads one {@link MerkleTreeSnapshot}, so updates landing meanwhile are picked up
+ * by the next sync. Leaves are served as their retained value when it still matches the session
+ * version, otherwise as their hash.
+ * <p>
+ * A session on a heap tree pins its copy-on-write version for free. On an off-heap or mapped tree
+ * it holds a heap copy of the hashes, so at most {@code maxCopiedSessions} of those are open at a
+ * time and further opens are refused. Sessions end with a {@code CLOSE} frame or after
+ * {@code idleTimeoutMillis} without a request.
+ */
+public class TreeSyncServer {
+
+    public static final int DEFAULT_MAX_COPIED_SESSIONS = 2;
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 60_000;
+
+    private static final Logger logger = LogManager.getLogger(TreeSyncServer.class);
+
+    private static final class Session {
+        final MerkleTreeSnapshot version;
+        final boolean copied;
+        volatile long lastAccess;
+
+        Session(MerkleTreeSnapshot version, boolean copied, long lastAccess) {
+            this.version = version;
+            this.copied = copied;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    private final MerkleTree tree;
+    private final int maxCopiedSessions;
+    private final long idleTimeoutNanos;
+    private final LongSupplier clock;
+    private final Map<Long, Session> sessions = new ConcurrentHashMap<>();
+    private final AtomicInteger copiedSessions = new AtomicInteger();
+    private final AtomicLong nextSession = new AtomicLong(1);
+
+    public TreeSyncServer(MerkleTree tree) {
+        this(tree, DEFAULT_MAX_COPIED_SESSIONS, DEFAULT_IDLE_TIMEOUT_MILLIS);
+    }
+
+    public TreeSyncServer(MerkleTree tree, int maxCopiedSessions, long idleTimeoutMillis) {
+        this(tree, maxCopiedSessions, idleTimeoutMillis, System::nanoTime);
+    }
+
+    TreeSyncServer(MerkleTree tree, int maxCopiedSessions, long idleTimeoutMillis, LongSupplier clock) {
+        if (maxCopiedSessions < 0 || idleTimeoutMillis <= 0) {
+            throw new InvalidParameterException("Session limit must not be negative and idle timeout must be positive, got "
+                    + maxCopiedSessions + " and " + idleTimeoutMillis);
+        }
+        this.tree = tree;
+        this.maxCopiedSessions = maxCopiedSessions;
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        this.clock = clock;
+    }
+
+    /**
+     * Returns the number of open sessions, idle ones included until the next {@code OPEN} drops them.
+     */
+    public int sessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Answers one request frame; failures are answered with an error frame rather than thrown.
+     */
+    public byte[] handle(byte[] request) {
+        try {
+            ByteBuffer frame = ByteBuffer.wrap(request);
+            byte operation = frame.get();
+            if (operation == TreeSyncProtocol.OPEN) return open();
+            long session = frame.getLong();
+            if (operation == TreeSyncProtocol.CLOSE) {
+                end(session);
+                return new byte[]{TreeSyncProtocol.OK};
+            }
+            Session open = sessions.get(session);
+            long now = clock.getAsLong();
+            if (open == null || isIdle(open, now)) {
+                end(session);
+                return TreeSyncProtocol.error("unknown or expired session " + session);
+            }
+            open.lastAccess = now;
+            MerkleTreeSnapshot version = open.version;
+            switch (operation) {
+                case TreeSyncProtocol.NODE_HASHES:
+                    int level = frame.getInt();
+                    byte[] hashes = version.nodeHashes(level, TreeSyncProtocol.getIndices(frame));
+                    return ByteBuffer.allocate(1 + hashes.length).put(TreeSyncProtocol.OK).put(hashes).array();
+                case TreeSyncProtocol.LEAVES:
+                    return leaves(version, TreeSyncProtocol.getIndices(frame));
+                case TreeSyncProtocol.LEAF_RANGE:
+                    return leaves(version, TreeSyncProtocol.getRange(frame, version.size()));
+                default:
+                    return TreeSyncProtocol.error("unknown operation " + operation);
+            }
+        } catch (RuntimeException e) {
+            logger.debug("sync request failed", e);
+            return TreeSyncProtocol.error(e.getMessage());
+        }
+    }
+
+    private byte[] open() {
+        long now = clock.getAsLong();
+        sessions.forEach((id, idle) -> {
+            if (isIdle(idle, now)) end(id);
+        });
+        boolean copied = tree.snapshotCopies();
+        if (copied && copiedSessions.incrementAndGet() > maxCopiedSessions) {
+            copiedSessions.decrementAndGet();
+            return TreeSyncProtocol.error("too many sync sessions, at most " + maxCopiedSessions + " copies of the tree");
+        }
+        MerkleTreeSnapshot version;
+        try {
+            version = tree.snapshot();
+        } catch (RuntimeException e) {
+            if (copied) copiedSessions.decrementAndGet();
+            throw e;
+        }
+        long session = nextSession.getAndIncrement();
+        sessions.put(session, new Session(version, copied, now));
+        byte[] root = version.getRootHash();
+        logger.debug("opened sync session {} on {} leaves", session, version.size());
+        return ByteBuffer.allocate(1 + Long.BYTES + 3 * Integer.BYTES + root.length)
+                .put(TreeSyncProtocol.OK).putLong(session)
+                .putInt(version.size()).putInt(version.hashLength()).putInt(version.arity()).put(root)
+                .array();
+    }
+
+    private boolean isIdle(Session session, long now) {
+        return now - session.lastAccess > idleTimeoutNanos;
+    }
+
+    private void end(long session) {
+        Session ended = sessions.remove(session);
+        if (ended != null && ended.copied) copiedSessions.decrementAndGet();
+    }
+
+    private byte[] leaves(MerkleTreeSnapshot version, int[] indices) {
+        byte[] hashes = version.nodeHashes(0, indices);
+        int hashLength = version.hashLength();
+        byte[] hash = new byte[hashLength];
+        ByteArrayOutputStream out = new ByteArrayOutputStream(1 + indices.length * (5 + hashLength));
+        out.write(TreeSyncProtocol.OK);
+        for (int j = 0; j < indices.length; j++) {
+            String value = valueOf(indices[j]);
+            if (value != null) {
+                version.getHashFunction().hashUtf8(value, hash, 0);
+            }
+            if (value != null && version.leafMatches(indices[j], hash)) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                out.write(TreeSyncProtocol.VALUE);
+                out.writeBytes(ByteBuffer.allocate(Integer.BYTES).putInt(bytes.length).array());
+                out.writeBytes(bytes);
+            } else {
+                out.write(TreeSyncProtocol.HASH);
+                out.writeBytes(ByteBuffer.allocate(Integer.BYTES).putInt(hashLength).array());
+                out.write(hashes, j * hashLength, hashLength);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private String valueOf(int leafIndex) {
+        try {
+            return tree.getValue(leafIndex);
+        } catch (IndexOutOfBoundsException e) {
+            return null; // truncated since the session started, its hash is served instead
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package org.example;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodes strings to UTF-8 into a buffer owned by the calling thread, so leaf values can be
+ * hashed without allocating an encoded copy per value.
+ */
+final class Utf8 {
+
+    private static final ThreadLocal<Utf8> buffers = ThreadLocal.withInitial(Utf8::new);
+
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+    private ByteBuffer encoded = ByteBuffer.allocate(256);
+
+    private Utf8() {
+    }
+
+    /**
+     * Returns the UTF-8 bytes of {@code value} as a heap buffer positioned at 0. The buffer
+     * is reused by the next call on the same thread.
+     */
+    static ByteBuffer encode(String value) {
+        return buffers.get().encodeInto(value);
+    }
+
+    private ByteBuffer encodeInto(String value) {
+        int maxLength = (int) Math.ceil(value.length() * (double) encoder.maxBytesPerChar());
+        if (encoded.capacity() < maxLength) {
+            encoded = ByteBuffer.allocate(Math.max(maxLength, encoded.capacity() * 2));
+        }
+        encoded.clear();
+        encoder.reset();
+        CoderResult result = encoder.encode(CharBuffer.wrap(value), encoded, true);
+        if (result.isError()) {
+            // keep String.getBytes semantics for malformed input such as lone surrogates
+            encoded.clear();
+            encoded.put(value.getBytes(StandardCharsets.UTF_8));
+        } else {
+            encoder.flush(encoded);
+        }
+        encoded.flip();
+        return encoded;
+    }
+}
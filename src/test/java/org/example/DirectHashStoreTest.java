@@ -0,0 +1,59 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DirectHashStoreTest {
+
+    private static final List<String> data = IntStream.range(0, 5000).mapToObj(Integer::toString).toList();
+
+    @Test
+    void store_grows_and_shrinks_across_chunks() {
+        DirectHashStore store = new DirectHashStore(10, 4);
+        store.resize(DirectHashStore.CHUNK_SLOTS + 10);
+        store.write(3, new byte[]{1, 2, 3, 4}, 0);
+        store.write(DirectHashStore.CHUNK_SLOTS + 9, new byte[]{5, 6, 7, 8}, 0);
+        store.resize(DirectHashStore.CHUNK_SLOTS + 5);
+        store.resize(DirectHashStore.CHUNK_SLOTS + 10);
+
+        assertArrayEquals(new byte[]{1, 2, 3, 4}, store.get(3));
+        assertArrayEquals(new byte[4], store.get(DirectHashStore.CHUNK_SLOTS + 9));
+        store.release();
+        assertThrows(IllegalStateException.class, () -> store.get(3));
+    }
+
+    @Test
+    void off_heap_tree_matches_heap_tree() throws IOException {
+        ExecutorService executors = Executors.newFixedThreadPool(4);
+        MerkleTreeConfig config = MerkleTreeConfig.builder().offHeap(true).retainValues(false)
+                .executor(executors).parallelThreshold(256).build();
+        List<String> expected = new ArrayList<>(data);
+        MerkleTree offHeap = new MerkleTree(data, config);
+        try (offHeap) {
+            assertArrayEquals(new MerkleTree(data).getRootHash(), offHeap.getRootHash());
+            assertTrue(offHeap.verifyMerkleProof("1234", offHeap.getMerkleProof("1234")));
+
+            offHeap.updateLeaves(List.of(new MerkleNode("changed", null, 17)), executors);
+            offHeap.append("x", "y", "z");
+            offHeap.truncate(4000);
+            expected.set(17, "changed");
+            expected.addAll(List.of("x", "y", "z"));
+            expected = expected.subList(0, 4000);
+
+            assertArrayEquals(new MerkleTree(expected).getRootHash(), offHeap.getRootHash());
+            assertArrayEquals(new int[]{17}, offHeap.findLeafIndices("changed"));
+            assertArrayEquals(offHeap.getRootHash(), offHeap.snapshot().getRootHash());
+        } finally {
+            executors.shutdown();
+        }
+        assertThrows(IllegalStateException.class, offHeap::getRootHash);
+    }
+}
@@ -0,0 +1,109 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EncodedMerkleProofTest {
+
+    private static final List<String> data = IntStream.range(0, 1001).mapToObj(Integer::toString).toList();
+    private static final MerkleTree tree = new MerkleTree(data);
+    private static final HashFunction sha256 = new Hash_SHA_256();
+
+    @Test
+    void encode_and_read_round_trip() {
+        List<MerkleProof> proof = tree.getMerkleProof(1000);
+        ByteBuffer buffer = ByteBuffer.allocate(EncodedMerkleProof.encodedLength(proof.size(), 32));
+        EncodedMerkleProof.encode(1000, data.size(), proof, 32, buffer);
+        assertFalse(buffer.hasRemaining());
+        buffer.flip();
+
+        EncodedMerkleProof decoded = EncodedMerkleProof.read(buffer);
+        assertEquals(1000, decoded.leafIndex());
+        assertEquals(1001, decoded.leafCount());
+        assertEquals(10, decoded.depth());
+        assertEquals(proof, decoded.toProofs());
+        assertTrue(decoded.verify(sha256.hash("1000".getBytes()), tree.getRootHash(), sha256));
+        assertFalse(decoded.verify(sha256.hash("999".getBytes()), tree.getRootHash(), sha256));
+    }
+
+    @Test
+    void tree_writes_proofs_back_to_back_into_direct_buffer() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(3 * EncodedMerkleProof.encodedLength(10, 32));
+        for (int leaf : new int[]{0, 511, 1000}) {
+            tree.writeMerkleProof(leaf, buffer);
+        }
+        buffer.flip();
+        for (int leaf : new int[]{0, 511, 1000}) {
+            EncodedMerkleProof proof = EncodedMerkleProof.read(buffer);
+            assertEquals(leaf, proof.leafIndex());
+            assertEquals(tree.getMerkleProof(leaf), proof.toProofs());
+            assertTrue(proof.verify(sha256.hash(data.get(leaf).getBytes()), tree.getRootHash(), sha256));
+        }
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    void mapped_tree_writes_same_encoding(@TempDir Path directory) throws Exception {
+        Path file = directory.resolve("tree.bin");
+        tree.save(file);
+        ByteBuffer expected = ByteBuffer.allocate(EncodedMerkleProof.encodedLength(10, 32));
+        tree.writeMerkleProof(321, expected);
+        try (MerkleTree mapped = MerkleTree.open(file)) {
+            ByteBuffer actual = ByteBuffer.allocate(expected.capacity());
+            mapped.writeMerkleProof(321, actual);
+            assertEquals(expected.flip(), actual.flip());
+        }
+    }
+
+    @Test
+    void encode_rejects_proof_of_other_position() {
+        List<MerkleProof> proof = tree.getMerkleProof(6);
+        assertThrows(IllegalArgumentException.class, () -> EncodedMerkleProof.encode(7, data.size(), proof, 32, ByteBuffer.allocate(1024)));
+        assertThrows(IllegalArgumentException.class, () -> EncodedMerkleProof.encode(6, 6, proof, 32, ByteBuffer.allocate(1024)));
+    }
+
+    @Test
+    void empty_proof_of_single_leaf_tree_verifies() {
+        MerkleTree single = new MerkleTree(List.of("only"));
+        ByteBuffer buffer = ByteBuffer.allocate(EncodedMerkleProof.encodedLength(0, 32));
+        EncodedMerkleProof.encode(0, 1, single.getMerkleProof(0), 32, buffer);
+
+        EncodedMerkleProof decoded = EncodedMerkleProof.read(buffer.flip());
+        assertEquals(0, decoded.depth());
+        assertTrue(decoded.verify(sha256.hash("only".getBytes()), single.getRootHash(), sha256));
+    }
+
+    @Test
+    void positions_past_the_last_leaf_are_rejected() {
+        MerkleTree five = new MerkleTree(List.of("A", "B", "C", "D", "E"));
+        byte[] root = five.getRootHash();
+        byte[] leafHash = sha256.hash("E".getBytes());
+        ByteBuffer encoded = ByteBuffer.allocate(EncodedMerkleProof.encodedLength(3, 32));
+        five.writeMerkleProof(4, encoded);
+        byte[] bytes = encoded.array();
+        assertTrue(EncodedMerkleProof.read(ByteBuffer.wrap(bytes)).verify(leafHash, root, sha256));
+        // E is combined with itself on the two lower levels, so leaves 5, 6 and 7 fold to the same root
+        for (int leafIndex = 5; leafIndex < 8; leafIndex++) {
+            ByteBuffer forged = ByteBuffer.wrap(bytes.clone());
+            forged.putInt(0, leafIndex);
+            assertFalse(EncodedMerkleProof.read(forged).verify(leafHash, root, sha256), "leaf " + leafIndex);
+        }
+    }
+
+    @Test
+    void read_rejects_truncated_header_and_steps() {
+        ByteBuffer encoded = ByteBuffer.allocate(EncodedMerkleProof.encodedLength(10, 32));
+        tree.writeMerkleProof(5, encoded);
+        byte[] bytes = encoded.array();
+
+        assertThrows(IllegalArgumentException.class, () -> EncodedMerkleProof.read(ByteBuffer.wrap(bytes, 0, 4)));
+        assertThrows(IllegalArgumentException.class, () -> EncodedMerkleProof.read(ByteBuffer.wrap(bytes, 0, bytes.length - 1)));
+    }
+}
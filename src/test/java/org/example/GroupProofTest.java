@@ -0,0 +1,92 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GroupProofTest {
+
+    private static MerkleTree tree(List<String> data, int arity) {
+        return new MerkleTree(data, MerkleTreeConfig.builder().arity(arity).build());
+    }
+
+    /**
+     * Reference root: hash groups of k children level by level, repeating the last node of a level.
+     */
+    private static byte[] naiveRoot(List<String> data, int arity, HashFunction hf) {
+        List<byte[]> level = new ArrayList<>(data.stream().map(v -> hf.hash(v.getBytes())).toList());
+        while (level.size() > 1) {
+            List<byte[]> next = new ArrayList<>();
+            for (int first = 0; first < level.size(); first += arity) {
+                byte[] group = new byte[arity * hf.digestLength()];
+                for (int j = 0; j < arity; j++) {
+                    byte[] child = level.get(Math.min(first + j, level.size() - 1));
+                    System.arraycopy(child, 0, group, j * child.length, child.length);
+                }
+                next.add(arity == 2 ? hf.combine(level.get(first), level.get(Math.min(first + 1, level.size() - 1))) : hf.hash(group));
+            }
+            level = next;
+        }
+        return level.get(0);
+    }
+
+    @Test
+    void wide_trees_match_reference_and_proofs_verify() {
+        HashFunction hf = new Hash_SHA_256();
+        for (int arity : new int[]{2, 4, 8, 16}) {
+            for (int size : new int[]{1, 2, 5, 16, 17, 100}) {
+                List<String> data = IntStream.range(0, size).mapToObj(Integer::toString).toList();
+                MerkleTree tree = tree(data, arity);
+                assertArrayEquals(naiveRoot(data, arity, hf), tree.getRootHash(), "arity " + arity + " size " + size);
+                for (int i = 0; i < size; i++) {
+                    GroupProof proof = tree.getGroupProof(i);
+                    assertTrue(tree.verifyGroupProof(data.get(i), proof), "arity " + arity + " leaf " + i);
+                    assertFalse(tree.verifyGroupProof("x", proof));
+                }
+            }
+        }
+        assertArrayEquals(new MerkleTree(List.of("a", "b", "c")).getRootHash(), tree(List.of("a", "b", "c"), 2).getRootHash());
+        assertEquals(2, tree(IntStream.range(0, 100).mapToObj(Integer::toString).toList(), 16).getGroupProof(3).depth());
+    }
+
+    @Test
+    void wide_tree_updates_appends_and_truncates_match_rebuild() {
+        List<String> data = new ArrayList<>(IntStream.range(0, 1000).mapToObj(Integer::toString).toList());
+        MerkleTree tree = tree(data, 8);
+        tree.updateLeaves(List.of(new MerkleNode("x", null, 7), new MerkleNode("y", null, 999)), null);
+        data.set(7, "x");
+        data.set(999, "y");
+        assertArrayEquals(tree(data, 8).getRootHash(), tree.getRootHash());
+
+        tree.append("a", "b", "c");
+        data.addAll(List.of("a", "b", "c"));
+        assertArrayEquals(tree(data, 8).getRootHash(), tree.getRootHash());
+        tree.truncate(65);
+        assertArrayEquals(tree(data.subList(0, 65), 8).getRootHash(), tree.getRootHash());
+
+        assertArrayEquals(new int[]{7, 64}, tree.diff(tree(IntStream.range(0, 65).mapToObj(i -> i == 64 ? "z" : Integer.toString(i)).toList(), 8)));
+        assertThrows(UnsupportedOperationException.class, () -> tree.getMerkleProof(3));
+        assertThrows(InvalidParameterException.class, () -> tree(data, 3));
+    }
+
+    @Test
+    void wide_tree_round_trips_through_file(@TempDir Path dir) throws Exception {
+        List<String> data = IntStream.range(0, 300).mapToObj(Integer::toString).toList();
+        MerkleTree tree = tree(data, 4);
+        Path file = dir.resolve("tree.bin");
+        tree.save(file);
+        try (MerkleTree mapped = MerkleTree.open(file, MerkleTreeConfig.builder().arity(4).build())) {
+            assertArrayEquals(tree.getRootHash(), mapped.getRootHash());
+            assertTrue(mapped.verifyGroupProof("123", mapped.getGroupProof(123)));
+        }
+        assertThrows(IOException.class, () -> MerkleTree.open(file));
+    }
+}
@@ -0,0 +1,92 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HexFormat;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HashFunctionTest {
+
+    private static final byte[] BYTES_256 = sequence(256, 256);
+    private static final byte[] BYTES_300 = sequence(300, 251);
+
+    @Test
+    void blake2b_256_matches_reference_vectors() {
+        HashFunction blake2b = new Hash_BLAKE2b_256();
+        assertEquals("0e5751c026e543b2e8ab2eb06099daa1d1e5df47778f7787faab45cdf12fe3a8", hex(blake2b.hash(new byte[0])));
+        assertEquals("bddd813c634239723171ef3fee98579b94964e3bb1cb3e427262c8c068d52319", hex(blake2b.hash(utf8("abc"))));
+        assertEquals("39a7eb9fedc19aabc83425c6755dd90e6f9d0c804964a1f4aaeea3b9fb599835", hex(blake2b.hash(BYTES_256)));
+        assertEquals("940563f11807c8ba3192299e05cf544b82463742c8a5e80c2a5d81751cd8b0ca", hex(blake2b.hash(BYTES_300)));
+    }
+
+    @Test
+    void sha_512_256_matches_reference_vectors() {
+        HashFunction sha512_256 = new Hash_SHA_512_256();
+        assertEquals(32, sha512_256.digestLength());
+        assertEquals("53048e2681941ef99b2e29b76b4c7dabe4c2d0c634fc6d46e0e2f13107e7af23", hex(sha512_256.hash(utf8("abc"))));
+    }
+
+    @Test
+    void murmur3_128_matches_reference_vectors() {
+        HashFunction murmur3 = new Hash_Murmur3_128();
+        assertEquals(16, murmur3.digestLength());
+        assertEquals("00000000000000000000000000000000", hex(murmur3.hash(new byte[0])));
+        assertEquals("029bbd41b3a7d8cb191dae486a901e5b", hex(murmur3.hash(utf8("hello"))));
+        assertEquals("6c1b07bc7bbc4be347939ac4a93c437a", hex(murmur3.hash(utf8("The quick brown fox jumps over the lazy dog"))));
+        assertEquals("0123818d2d52d5ffa18e3356eb3822a2", hex(murmur3.hash(sequence(64, 256))));
+    }
+
+    @Test
+    void combine_same_as_hash_of_concatenated_digests() {
+        for (HashFunction function : List.of(new Hash_SHA_256(), new Hash_SHA_512_256(), new Hash_BLAKE2b_256(), new Hash_Murmur3_128())) {
+            byte[] left = function.hash(utf8("left"));
+            byte[] right = function.hash(utf8("right"));
+            byte[] concatenated = new byte[2 * function.digestLength()];
+            System.arraycopy(left, 0, concatenated, 0, left.length);
+            System.arraycopy(right, 0, concatenated, left.length, right.length);
+
+            assertArrayEquals(function.hash(concatenated), function.combine(left, right), function.getClass().getSimpleName());
+        }
+    }
+
+    @Test
+    void tree_uses_configured_hash_function_end_to_end() {
+        List<String> data = List.of("A", "B", "C", "D", "E");
+        for (HashFunction function : List.of(new Hash_SHA_512_256(), new Hash_BLAKE2b_256(), new Hash_Murmur3_128())) {
+            MerkleTree tree = new MerkleTree(data, function);
+            byte[] ab = function.combine(function.hash(utf8("A")), function.hash(utf8("B")));
+            byte[] cd = function.combine(function.hash(utf8("C")), function.hash(utf8("D")));
+            byte[] e = function.hash(utf8("E"));
+            byte[] ee = function.combine(function.combine(e, e), function.combine(e, e));
+            assertArrayEquals(function.combine(function.combine(ab, cd), ee), tree.getRootHash());
+
+            List<MerkleProof> proofs = tree.getMerkleProof("C");
+            assertEquals(function.digestLength(), proofs.get(0).getHash().length);
+            assertTrue(tree.verifyMerkleProof("C", proofs));
+
+            MerkleNode leaf = tree.findLeaf("C");
+            leaf.setValue("F");
+            tree.updateLeaves(List.of(leaf), null);
+            assertArrayEquals(new MerkleTree(List.of("A", "B", "F", "D", "E"), function).getRootHash(), tree.getRootHash());
+        }
+    }
+
+    private static byte[] sequence(int length, int modulus) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) (i % modulus);
+        }
+        return bytes;
+    }
+
+    private static byte[] utf8(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String hex(byte[] bytes) {
+        return HexFormat.of().formatHex(bytes);
+    }
+}
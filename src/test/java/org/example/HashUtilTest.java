@@ -0,0 +1,39 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HashUtilTest {
+
+    @Test
+    void hash_utf8_into_same_as_hash_of_encoded_bytes() throws Exception {
+        MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+        for (String value : List.of("", "A", "héllo wörld", "日本語", "😀", "lone \uD800 surrogate", "x".repeat(1000))) {
+            byte[] out = new byte[40];
+            HashUtil.hashUtf8Into(value, out, 8);
+            byte[] expected = sha256.digest(value.getBytes(StandardCharsets.UTF_8));
+            assertArrayEquals(expected, Arrays.copyOfRange(out, 8, 40), value);
+        }
+    }
+
+    @Test
+    void combine_into_same_as_hash_of_concatenation() {
+        byte[] left = HashUtil.hash_sha_256("A".getBytes(StandardCharsets.UTF_8));
+        byte[] right = HashUtil.hash_sha_256("B".getBytes(StandardCharsets.UTF_8));
+        byte[] concatenated = new byte[64];
+        System.arraycopy(left, 0, concatenated, 0, 32);
+        System.arraycopy(right, 0, concatenated, 32, 32);
+
+        byte[] expected = HashUtil.hash_sha_256(concatenated);
+        assertArrayEquals(expected, HashUtil.combineHash(left, right));
+
+        HashUtil.combineInto(left, 0, right, 0, left, 0);
+        assertArrayEquals(expected, left);
+    }
+}
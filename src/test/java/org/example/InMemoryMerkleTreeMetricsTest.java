@@ -0,0 +1,69 @@
+package org.example;
+
+import org.example.MerkleTreeMetrics.Operation;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InMemoryMerkleTreeMetricsTest {
+
+    @Test
+    void tree_operations_are_recorded() {
+        InMemoryMerkleTreeMetrics metrics = new InMemoryMerkleTreeMetrics();
+        MerkleTree tree = new MerkleTree(List.of("A", "B", "C", "D", "E"), MerkleTreeConfig.builder().metrics(metrics).build());
+        // 5 leaves, then 3 + 2 + 1 inner nodes
+        assertEquals(1, metrics.latency(Operation.BUILD).count());
+        assertEquals(11, metrics.hashes(Operation.BUILD).sum());
+
+        List<MerkleProof> proof = tree.getMerkleProof("C");
+        tree.getMerkleProof(4);
+        assertTrue(tree.verifyMerkleProof("C", proof));
+        assertEquals(2, metrics.latency(Operation.PROOF).count());
+        assertEquals(1, metrics.hashes(Operation.PROOF).sum());
+        // a heap tree looks values up in the version it reads, without a lock
+        assertEquals(0, metrics.lockWait(Operation.PROOF).count());
+        assertEquals(4, metrics.hashes(Operation.VERIFY).sum());
+
+        tree.updateLeaves(List.of(new MerkleNode("c", null, 2), new MerkleNode("d", null, 3)), null);
+        assertEquals(1, metrics.latency(Operation.UPDATE).count());
+        assertEquals(1, metrics.lockWait(Operation.UPDATE).count());
+        // two leaves share every ancestor
+        assertEquals(5, metrics.dirtyNodes().sum());
+        assertEquals(5, metrics.hashes(Operation.UPDATE).sum());
+        assertTrue(metrics.toString().contains("UPDATE latency"));
+    }
+
+    @Test
+    void lookups_are_recorded_apart_from_proofs() throws IOException {
+        InMemoryMerkleTreeMetrics metrics = new InMemoryMerkleTreeMetrics();
+        MerkleTreeConfig config = MerkleTreeConfig.builder().metrics(metrics).offHeap(true).build();
+        try (MerkleTree tree = new MerkleTree(List.of("A", "B", "C", "D", "E"), config)) {
+            assertEquals(2, tree.findLeaf("C").getIndex());
+            assertArrayEquals(new int[]{4}, tree.findLeafIndices("E"));
+            assertEquals(2, metrics.latency(Operation.LOOKUP).count());
+            // the read lock, then the lock building the leaf index on first use
+            assertEquals(3, metrics.lockWait(Operation.LOOKUP).count());
+            assertEquals(0, metrics.latency(Operation.PROOF).count());
+
+            MultiProof proof = tree.getMultiProof(List.of("E", "x", "B"));
+            assertArrayEquals(new int[]{1, 4}, proof.getLeafIndices());
+            assertEquals(1, metrics.lockWait(Operation.PROOF).count());
+        }
+    }
+
+    @Test
+    void histogram_percentiles_are_bucket_bounds() {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+        assertEquals(100, histogram.count());
+        assertEquals(50.5, histogram.mean());
+        assertEquals(63, histogram.percentile(0.5));
+        assertEquals(127, histogram.percentile(0.99));
+        assertEquals(0, new Histogram().percentile(0.5));
+    }
+}
@@ -0,0 +1,78 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MerkleProofVerifierTest {
+
+    private static final List<String> data = IntStream.range(0, 1001).mapToObj(Integer::toString).toList();
+    private static final MerkleTree tree = new MerkleTree(data);
+    private static final HashFunction sha256 = new Hash_SHA_256();
+
+    @Test
+    void verify_without_tree() {
+        byte[] root = tree.getRootHash();
+        assertTrue(MerkleProofVerifier.verify("1000", 1000, data.size(), tree.getMerkleProof(1000), root, sha256));
+        assertTrue(MerkleProofVerifier.verify(sha256.hash("17".getBytes()), 17, data.size(), tree.getMerkleProof(17), root, sha256));
+
+        assertFalse(MerkleProofVerifier.verify("17", 17, data.size(), tree.getMerkleProof(17), new MerkleTree(List.of("x")).getRootHash(), sha256));
+        assertFalse(MerkleProofVerifier.verify("18", 17, data.size(), tree.getMerkleProof(17), root, sha256));
+    }
+
+    @Test
+    void wrong_position_is_rejected() {
+        MerkleTree duplicates = new MerkleTree(List.of("A", "B", "A", "B"));
+        List<MerkleProof> proof = duplicates.getMerkleProof(2);
+        byte[] root = duplicates.getRootHash();
+        assertTrue(MerkleProofVerifier.verify("A", 2, 4, proof, root, sha256));
+        assertFalse(MerkleProofVerifier.verify("A", 0, 4, proof, root, sha256));
+        assertFalse(MerkleProofVerifier.verify("A", 6, 4, proof, root, sha256));
+        assertFalse(MerkleProofVerifier.verify("A", -2, 4, proof, root, sha256));
+    }
+
+    @Test
+    void positions_past_the_last_leaf_are_rejected() {
+        MerkleTree five = new MerkleTree(List.of("A", "B", "C", "D", "E"));
+        byte[] root = five.getRootHash();
+        List<MerkleProof> proof = five.getMerkleProof(4);
+        assertTrue(MerkleProofVerifier.verify("E", 4, 5, proof, root, sha256));
+        // E is the last node of the two lower levels and is combined with itself there, so the
+        // direction of those steps can be flipped to point at leaves 5, 6 and 7, which do not exist
+        for (int leafIndex = 5; leafIndex < 8; leafIndex++) {
+            List<MerkleProof> forged = new ArrayList<>();
+            for (int level = 0; level < proof.size(); level++) {
+                MerkleProof.Direction direction = (leafIndex >>> level & 1) == 0 ? MerkleProof.Direction.RIGHT : MerkleProof.Direction.LEFT;
+                forged.add(new MerkleProof(proof.get(level).getHash(), direction));
+            }
+            assertFalse(MerkleProofVerifier.verify("E", leafIndex, 5, forged, root, sha256), "leaf " + leafIndex);
+            // the forged proof still folds to the root, only the leaf count tells it apart
+            byte[] folded = sha256.hash("E".getBytes());
+            MerkleProofVerifier.fold(folded, forged, sha256);
+            assertArrayEquals(root, folded);
+        }
+        assertFalse(MerkleProofVerifier.verify("E", 4, 5, proof.subList(0, 2), root, sha256));
+    }
+
+    @Test
+    void verify_all_across_threads() {
+        List<byte[]> leafHashes = new ArrayList<>();
+        List<List<MerkleProof>> proofs = new ArrayList<>();
+        int[] indices = IntStream.range(0, data.size()).toArray();
+        for (int i : indices) {
+            leafHashes.add(sha256.hash(data.get(i).getBytes()));
+            proofs.add(tree.getMerkleProof(i));
+        }
+        proofs.set(3, proofs.get(4));
+
+        boolean[] valid = MerkleProofVerifier.verifyAll(leafHashes, indices, data.size(), proofs, tree.getRootHash(), sha256, ForkJoinPool.commonPool());
+        for (int i : indices) {
+            assertEquals(i != 3, valid[i], "leaf " + i);
+        }
+    }
+}
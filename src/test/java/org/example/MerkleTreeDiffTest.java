@@ -0,0 +1,75 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MerkleTreeDiffTest {
+
+    private static List<String> values(int size) {
+        return IntStream.range(0, size).mapToObj(Integer::toString).collect(Collectors.toCollection(ArrayList::new));
+    }
+
+    @Test
+    void identical_trees_have_no_difference() {
+        assertArrayEquals(new int[0], new MerkleTree(values(1000)).diff(new MerkleTree(values(1000))));
+    }
+
+    @Test
+    void diff_finds_changed_leaves_in_one_round_trip_per_level() {
+        List<String> changed = values(10_000);
+        for (int i : new int[]{0, 17, 4096, 9999}) {
+            changed.set(i, "changed " + i);
+        }
+        MerkleTree local = new MerkleTree(values(10_000));
+        CountingSource remote = new CountingSource(new MerkleTree(changed));
+
+        assertArrayEquals(new int[]{0, 17, 4096, 9999}, local.diff(remote));
+        assertTrue(remote.calls <= 15, "calls " + remote.calls);
+        assertTrue(remote.nodes < 4 * 2 * 15, "nodes " + remote.nodes);
+    }
+
+    @Test
+    void diff_reports_leaves_present_on_one_side_only() {
+        List<String> longer = values(1003);
+        longer.set(5, "five");
+        assertArrayEquals(new int[]{5, 1000, 1001, 1002}, new MerkleTree(values(1000)).diff(new MerkleTree(longer)));
+        assertArrayEquals(new int[]{5, 1000, 1001, 1002}, new MerkleTree(longer).diff(new MerkleTree(values(1000))));
+        assertArrayEquals(new int[]{1024}, new MerkleTree(values(1024)).diff(new MerkleTree(values(1025))));
+        assertArrayEquals(new int[]{1, 2}, new MerkleTree(values(1)).diff(new MerkleTree(values(3))));
+        assertArrayEquals(new int[]{5}, new MerkleTree(values(1000)).diffPrefix(new MerkleTree(longer)));
+        assertArrayEquals(new int[0], new MerkleTree(values(1024)).diffPrefix(new MerkleTree(values(1025))));
+    }
+
+    private static final class CountingSource implements TreeHashSource {
+        private final TreeHashSource delegate;
+        int calls;
+        int nodes;
+
+        CountingSource(TreeHashSource delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public int size() {
+            return delegate.size();
+        }
+
+        @Override
+        public int hashLength() {
+            return delegate.hashLength();
+        }
+
+        @Override
+        public byte[] nodeHashes(int level, int[] indices) {
+            calls++;
+            nodes += indices.length;
+            return delegate.nodeHashes(level, indices);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MerkleTreeFileTest {
+
+    private static final List<String> data = IntStream.range(0, 1001).mapToObj(Integer::toString).toList();
+
+    @Test
+    void opened_tree_serves_same_root_and_proofs(@TempDir Path directory) throws IOException {
+        MerkleTree tree = new MerkleTree(data);
+        Path file = directory.resolve("tree.bin");
+        tree.save(file);
+
+        try (MerkleTree opened = MerkleTree.open(file)) {
+            assertArrayEquals(tree.getRootHash(), opened.getRootHash());
+            assertEquals(tree.getMerkleProof(777), opened.getMerkleProof(777));
+            assertEquals(tree.getMerkleProof("1000"), opened.getMerkleProof("1000"));
+            assertTrue(opened.verifyMerkleProof("5", opened.getMerkleProof(5)));
+            assertThrows(UnsupportedOperationException.class, () -> opened.append("1001"));
+        }
+    }
+
+    @Test
+    void updates_are_written_back_in_place(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("tree.bin");
+        new MerkleTree(data).save(file);
+        long fileSize = Files.size(file);
+
+        try (MerkleTree opened = MerkleTree.open(file)) {
+            MerkleNode leaf = opened.findLeaf("500");
+            leaf.setValue("five hundred");
+            opened.updateLeaves(List.of(leaf), null);
+        }
+        assertEquals(fileSize, Files.size(file));
+
+        List<String> updated = new ArrayList<>(data);
+        updated.set(500, "five hundred");
+        try (MerkleTree reopened = MerkleTree.open(file)) {
+            assertArrayEquals(new MerkleTree(updated).getRootHash(), reopened.getRootHash());
+            assertArrayEquals(new int[]{500}, reopened.findLeafIndices("five hundred"));
+        }
+    }
+
+    @Test
+    void open_rejects_foreign_files_and_hash_length_mismatch(@TempDir Path directory) throws IOException {
+        Path garbage = Files.write(directory.resolve("garbage.bin"), new byte[64]);
+        assertThrows(IOException.class, () -> MerkleTree.open(garbage));
+
+        Path file = directory.resolve("tree.bin");
+        new MerkleTree(data).save(file);
+        MerkleTreeConfig murmur = MerkleTreeConfig.builder().hashFunction(new Hash_Murmur3_128()).build();
+        assertThrows(IOException.class, () -> MerkleTree.open(file, murmur));
+
+        // the level count follows magic, version, hash length and leaf count
+        for (int levelCount : new int[]{0, -1}) {
+            Path corrupt = directory.resolve("levels" + levelCount + ".bin");
+            byte[] bytes = Files.readAllBytes(file);
+            ByteBuffer.wrap(bytes).putInt(16, levelCount);
+            Files.write(corrupt, bytes);
+            assertThrows(IOException.class, () -> MerkleTree.open(corrupt));
+        }
+    }
+}
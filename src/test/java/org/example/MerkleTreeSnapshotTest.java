@@ -0,0 +1,137 @@
+package org.example;
+
+import org.example.MerkleTreeMetrics.Operation;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MerkleTreeSnapshotTest {
+
+    private static final List<String> data = IntStream.range(0, 10_000).mapToObj(Integer::toString).toList();
+
+    @Test
+    void snapshot_keeps_serving_its_root_while_the_tree_changes() {
+        MerkleTree tree = new MerkleTree(data);
+        MerkleTreeSnapshot pinned = tree.snapshot();
+        byte[] root = pinned.getRootHash();
+
+        tree.updateLeaves(List.of(new MerkleNode("changed", null, 5000)), null);
+        tree.append("x", "y");
+        tree.truncate(9000);
+
+        assertArrayEquals(root, pinned.getRootHash());
+        assertEquals(data.size(), pinned.size());
+        assertTrue(pinned.verifyMerkleProof("5000", pinned.getMerkleProof(5000)));
+        assertTrue(pinned.verifyMerkleProof("9500", pinned.getMerkleProof(9500)));
+        assertFalse(tree.verifyMerkleProof("5000", pinned.getMerkleProof(5000)));
+
+        List<String> expected = new ArrayList<>(data.subList(0, 9000));
+        expected.set(5000, "changed");
+        assertArrayEquals(new MerkleTree(expected).getRootHash(), tree.getRootHash());
+        assertArrayEquals(new int[]{5000}, tree.snapshot().diff(new MerkleTree(data.subList(0, 9000))));
+    }
+
+    @Test
+    void lookups_by_value_answer_for_the_version_they_read() {
+        MerkleTree tree = new MerkleTree(data);
+        MerkleTreeSnapshot old = tree.snapshot();
+        tree.updateLeaves(List.of(new MerkleNode("7", null, 3), new MerkleNode("3", null, 7)), null);
+        byte[] three = tree.hashLeaf("3".getBytes());
+        byte[] seven = tree.hashLeaf("7".getBytes());
+
+        assertArrayEquals(new int[]{3, 7}, tree.firstLeavesWithHashes(Operation.PROOF, old, List.of(three, seven)));
+        assertArrayEquals(new int[]{7, 3}, tree.firstLeavesWithHashes(Operation.PROOF, tree.snapshot(), List.of(three, seven)));
+        assertArrayEquals(new int[]{3}, tree.findLeafIndices("7"));
+    }
+
+    @Test
+    void every_version_keeps_its_own_leaf_index_and_values() {
+        Random random = new Random(7);
+        List<String> contents = new ArrayList<>(IntStream.range(0, 10_000).mapToObj(i -> "v" + i % 50).toList());
+        MerkleTree tree = new MerkleTree(contents);
+        List<MerkleTreeSnapshot> versions = new ArrayList<>();
+        List<List<String>> expected = new ArrayList<>();
+        for (int step = 0; step < 100; step++) {
+            int op = random.nextInt(3);
+            if (op == 0) {
+                int leaf = random.nextInt(contents.size());
+                contents.set(leaf, "v" + random.nextInt(60));
+                tree.updateLeaves(List.of(new MerkleNode(contents.get(leaf), null, leaf)), null);
+            } else if (op == 1) {
+                String value = "v" + random.nextInt(60);
+                contents.add(value);
+                tree.append(value);
+            } else {
+                contents.remove(contents.size() - 1);
+                tree.truncate(contents.size());
+            }
+            versions.add(tree.snapshot());
+            expected.add(List.copyOf(contents));
+        }
+
+        for (int i = 0; i < versions.size(); i++) {
+            MerkleTreeSnapshot version = versions.get(i);
+            List<String> values = expected.get(i);
+            assertNotNull(version.leafIndex());
+            for (int v = 0; v < 60; v++) {
+                String value = "v" + v;
+                int[] positions = IntStream.range(0, values.size()).filter(k -> values.get(k).equals(value)).toArray();
+                assertArrayEquals(positions, version.leafIndex().findAll(tree.hashLeaf(value.getBytes())), "version " + i);
+            }
+            assertEquals(values.get(values.size() - 1), version.getValue(values.size() - 1));
+        }
+    }
+
+    @Test
+    void copy_on_write_store_leaves_snapshot_untouched() {
+        HeapHashStore store = new HeapHashStore(3 * HeapHashStore.PAGE_SLOTS + 5, 4);
+        store.write(7, new byte[]{1, 1, 1, 1}, 0);
+        HeapHashStore snapshot = store.snapshot();
+        store.write(7, new byte[]{2, 2, 2, 2}, 0);
+        store.resize(10);
+
+        assertArrayEquals(new byte[]{1, 1, 1, 1}, snapshot.get(7));
+        assertArrayEquals(new byte[]{2, 2, 2, 2}, store.get(7));
+        assertEquals(3 * HeapHashStore.PAGE_SLOTS + 5, snapshot.size());
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.write(0, new byte[4], 0));
+    }
+
+    @Test
+    void readers_see_whole_versions_during_parallel_updates() throws Exception {
+        ExecutorService executors = Executors.newFixedThreadPool(4);
+        MerkleTree tree = new MerkleTree(data, MerkleTreeConfig.builder().executor(executors).parallelThreshold(256).build());
+        byte[] root = tree.getRootHash();
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicBoolean torn = new AtomicBoolean();
+        Thread reader = new Thread(() -> {
+            while (!done.get()) {
+                MerkleTreeSnapshot version = tree.snapshot();
+                String value = version.verifyMerkleProof("1", version.getMerkleProof(1)) ? "1" : "one";
+                if (!version.verifyMerkleProof(value, version.getMerkleProof(1))) torn.set(true);
+            }
+        });
+        reader.start();
+        for (int round = 0; round < 20; round++) {
+            List<MerkleNode> changes = new ArrayList<>();
+            for (int i = 1; i < data.size(); i += 7) {
+                String value = Integer.toString(i);
+                changes.add(new MerkleNode(round % 2 == 0 ? (i == 1 ? "one" : "v" + value) : value, null, i));
+            }
+            tree.updateLeaves(changes, executors);
+        }
+        done.set(true);
+        reader.join();
+        executors.shutdown();
+
+        assertFalse(torn.get());
+        assertArrayEquals(root, tree.getRootHash());
+    }
+}
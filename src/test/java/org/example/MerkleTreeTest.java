@@ -3,13 +3,21 @@ package org.example;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.security.InvalidParameterException;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HexFormat;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -144,4 +152,167 @@ class MerkleTreeTest {
         assertEquals("68812a5ef301d5712a0fc4fc923e194418eb17bcfa2cb54272b2be8df915f7d0", HexFormat.of().formatHex(merkleTree.getRootHash()));
     }
 
+    @Test
+    void proofs_of_tree_spanning_several_pages_are_valid() {
+        List<String> values = IntStream.range(0, 40_001).mapToObj(Integer::toString).toList();
+        MerkleTree largeTree = new MerkleTree(values);
+        for (String value : List.of("0", "32767", "32768", "40000")) {
+            List<MerkleProof> proofs = largeTree.getMerkleProof(value);
+            assertEquals(16, proofs.size());
+            assertTrue(largeTree.verifyMerkleProof(value, proofs));
+        }
+    }
+
+    @Test
+    void update_leaf_matches_rebuilt_tree() {
+        MerkleNode leaf = merkleTree.findLeaf("E");
+        leaf.setValue("F");
+        merkleTree.updateLeaves(List.of(leaf), null);
+        assertArrayEquals(new MerkleTree(List.of("A", "B", "C", "D", "F")).getRootHash(), merkleTree.getRootHash());
+    }
+
+    @Test
+    void find_leaf_indices_returns_every_duplicate() {
+        MerkleTree treeWithDuplicates = new MerkleTree(List.of("A", "B", "A", "C", "A"));
+        assertArrayEquals(new int[]{0, 2, 4}, treeWithDuplicates.findLeafIndices("A"));
+        assertArrayEquals(new int[0], treeWithDuplicates.findLeafIndices("D"));
+
+        MerkleNode leaf = treeWithDuplicates.findLeaf("A");
+        leaf.setValue("D");
+        treeWithDuplicates.updateLeaves(List.of(leaf), null);
+        assertArrayEquals(new int[]{2, 4}, treeWithDuplicates.findLeafIndices("A"));
+        assertArrayEquals(new int[]{0}, treeWithDuplicates.findLeafIndices("D"));
+    }
+
+    @Test
+    void many_duplicates_are_indexed_in_linear_time() {
+        List<String> values = new ArrayList<>(Collections.nCopies(300_000, "same"));
+        values.set(1234, "other");
+        MerkleTree tree = assertTimeout(Duration.ofSeconds(10), () -> new MerkleTree(values));
+
+        assertEquals(299_999, tree.findLeafIndices("same").length);
+        assertEquals(0, tree.findLeaf("same").getIndex());
+        tree.updateLeaves(List.of(new MerkleNode("other", null, 0), new MerkleNode("same", null, 1234)), null);
+        tree.truncate(200_000);
+        tree.append("same");
+
+        int[] same = tree.findLeafIndices("same");
+        assertEquals(200_000, same.length);
+        assertEquals(1, same[0]);
+        assertEquals(200_000, same[same.length - 1]);
+        assertArrayEquals(new int[]{0}, tree.findLeafIndices("other"));
+    }
+
+    @Test
+    void get_proof_by_leaf_index() {
+        assertEquals(merkleTree.getMerkleProof("C"), merkleTree.getMerkleProof(2));
+        assertTrue(merkleTree.verifyMerkleProof("E", merkleTree.getMerkleProof(4)));
+        assertThrows(IndexOutOfBoundsException.class, () -> merkleTree.getMerkleProof(5));
+    }
+
+    @Test
+    void parallel_build_root_same_as_sequential() {
+        List<String> values = IntStream.range(0, 10_001).mapToObj(Integer::toString).toList();
+        byte[] expected = new MerkleTree(values).getRootHash();
+
+        MerkleTreeConfig forkJoin = MerkleTreeConfig.builder()
+                .executor(ForkJoinPool.commonPool())
+                .parallelThreshold(64)
+                .build();
+        assertArrayEquals(expected, new MerkleTree(values, forkJoin).getRootHash());
+
+        MerkleTreeConfig pool = MerkleTreeConfig.builder().executor(executors).parallelThreshold(1).build();
+        assertArrayEquals(expected, new MerkleTree(values, pool).getRootHash());
+        assertArrayEquals(merkleTree.getRootHash(), new MerkleTree(data, pool).getRootHash());
+    }
+
+    @Test
+    void concurrent_update_keeps_executor_usable_and_matches_rebuild() {
+        List<String> values = IntStream.range(0, 5_000).mapToObj(Integer::toString).collect(Collectors.toList());
+        MerkleTree tree = new MerkleTree(values, MerkleTreeConfig.builder().parallelThreshold(8).build());
+        for (int round = 0; round < 3; round++) {
+            List<MerkleNode> modified = new ArrayList<>();
+            for (int i = round; i < values.size(); i += 7) {
+                MerkleNode leaf = tree.findLeaf(values.get(i));
+                String newValue = "r" + round + "-" + i;
+                leaf.setValue(newValue);
+                values.set(i, newValue);
+                modified.add(leaf);
+            }
+            tree.updateLeaves(modified, executors);
+            assertFalse(executors.isShutdown());
+            assertArrayEquals(new MerkleTree(values).getRootHash(), tree.getRootHash());
+        }
+    }
+
+    @Test
+    void batch_update_hashes_each_dirty_ancestor_once() {
+        AtomicInteger combines = new AtomicInteger();
+        HashFunction countingSha256 = new Hash_SHA_256() {
+            @Override
+            public void combine(byte[] left, int leftOffset, byte[] right, int rightOffset, byte[] out, int outOffset) {
+                combines.incrementAndGet();
+                super.combine(left, leftOffset, right, rightOffset, out, outOffset);
+            }
+        };
+        List<String> values = List.of("A", "B", "C", "D", "E", "F", "G", "H");
+        MerkleTree tree = new MerkleTree(values, countingSha256);
+        List<MerkleNode> modified = values.stream().map(tree::findLeaf).peek(leaf -> leaf.setValue(leaf.getValue().toLowerCase())).toList();
+
+        combines.set(0);
+        tree.updateLeaves(modified, null);
+        assertEquals(4 + 2 + 1, combines.get());
+        assertArrayEquals(new MerkleTree(List.of("a", "b", "c", "d", "e", "f", "g", "h")).getRootHash(), tree.getRootHash());
+    }
+
+    @Test
+    void append_and_truncate_match_rebuilt_tree() {
+        List<String> values = new ArrayList<>(List.of("0"));
+        MerkleTree tree = new MerkleTree(values);
+        for (int i = 1; i < 70; i++) {
+            tree.append(Integer.toString(i));
+            values.add(Integer.toString(i));
+            assertArrayEquals(new MerkleTree(values).getRootHash(), tree.getRootHash(), "size " + values.size());
+        }
+        List<String> batch = IntStream.range(70, 40_000).mapToObj(Integer::toString).toList();
+        tree.appendAll(batch);
+        values.addAll(batch);
+        assertArrayEquals(new MerkleTree(values).getRootHash(), tree.getRootHash());
+        assertTrue(tree.verifyMerkleProof("39999", tree.getMerkleProof("39999")));
+
+        for (int newSize : new int[]{32_769, 32_768, 1000, 65, 64, 5, 1}) {
+            tree.truncate(newSize);
+            assertEquals(newSize, tree.size());
+            assertArrayEquals(new MerkleTree(values.subList(0, newSize)).getRootHash(), tree.getRootHash(), "size " + newSize);
+        }
+        assertNull(tree.findLeaf("1"));
+        assertThrows(InvalidParameterException.class, () -> tree.truncate(0));
+
+        tree.appendAll(List.of("1", "2", "3", "4"));
+        assertArrayEquals(new MerkleTree(List.of("0", "1", "2", "3", "4")).getRootHash(), tree.getRootHash());
+        assertArrayEquals(new int[]{2}, tree.findLeafIndices("2"));
+    }
+
+    @Test
+    void byte_buffer_and_hash_inputs_match_string_tree() {
+        MerkleTreeConfig config = MerkleTreeConfig.builder().retainValues(false).build();
+        List<byte[]> bytes = data.stream().map(v -> v.getBytes(StandardCharsets.UTF_8)).toList();
+        List<ByteBuffer> buffers = bytes.stream()
+                .map(b -> ByteBuffer.allocateDirect(b.length).put(b).flip()).toList();
+        List<byte[]> hashes = bytes.stream().map(HashUtil::hash_sha_256).toList();
+
+        MerkleTree fromBytes = MerkleTree.ofBytes(bytes, config);
+        assertArrayEquals(merkleTree.getRootHash(), fromBytes.getRootHash());
+        assertArrayEquals(merkleTree.getRootHash(), MerkleTree.ofBuffers(buffers, config).getRootHash());
+        assertEquals(0, buffers.get(0).position());
+        assertArrayEquals(merkleTree.getRootHash(), MerkleTree.ofLeafHashes(hashes, config).getRootHash());
+        assertEquals("C", merkleTree.getValue(2));
+        assertNull(fromBytes.getValue(2));
+
+        fromBytes.updateLeaves(List.of(MerkleNode.ofHash(4, fromBytes.hashLeaf("F".getBytes(StandardCharsets.UTF_8)))), null);
+        fromBytes.appendLeafHashes(List.of(HashUtil.hash_sha_256("G".getBytes(StandardCharsets.UTF_8))));
+        assertArrayEquals(new MerkleTree(List.of("A", "B", "C", "D", "F", "G")).getRootHash(), fromBytes.getRootHash());
+        assertArrayEquals(new int[]{5}, fromBytes.findLeafIndices("G"));
+        assertThrows(InvalidParameterException.class, () -> fromBytes.updateLeaves(List.of(MerkleNode.ofHash(0, new byte[3])), null));
+    }
 }
@@ -0,0 +1,69 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MultiProofTest {
+
+    private static final List<String> data = IntStream.range(0, 4097).mapToObj(Integer::toString).toList();
+    private static final MerkleTree tree = new MerkleTree(data);
+
+    @Test
+    void multi_proof_verifies_and_shares_upper_levels() {
+        int[] indices = IntStream.range(0, data.size()).filter(i -> i % 4 == 1 || i == 4096).toArray();
+        MultiProof proof = tree.getMultiProof(indices);
+
+        List<String> values = IntStream.of(proof.getLeafIndices()).mapToObj(data::get).toList();
+        assertTrue(tree.verifyMultiProof(values, proof));
+        // every 4th leaf needs its neighbour and the neighbouring pair, the levels above are computed
+        assertEquals(2 * (indices.length - 1), proof.siblingCount());
+        assertEquals(13, tree.getMerkleProof(1).size());
+    }
+
+    @Test
+    void multi_proof_of_single_leaf_matches_proof() {
+        MultiProof proof = tree.getMultiProof(2500);
+        List<MerkleProof> single = tree.getMerkleProof(2500);
+        assertEquals(single.size(), proof.siblingCount());
+        assertTrue(tree.verifyMultiProof(List.of("2500"), proof));
+    }
+
+    @Test
+    void multi_proof_for_edges_and_every_leaf() {
+        MerkleTree small = new MerkleTree(List.of("A", "B", "C", "D", "E"));
+        for (int[] indices : new int[][]{{4}, {0, 4}, {3, 4}, {0, 1, 2, 3, 4}, {1, 2}}) {
+            MultiProof proof = small.getMultiProof(indices);
+            List<String> values = IntStream.of(proof.getLeafIndices()).mapToObj(i -> String.valueOf((char) ('A' + i))).toList();
+            assertTrue(small.verifyMultiProof(values, proof));
+        }
+        assertEquals(0, small.getMultiProof(0, 1, 2, 3, 4).siblingCount());
+        assertTrue(new MerkleTree(List.of("A")).verifyMultiProof(List.of("A"), new MerkleTree(List.of("A")).getMultiProof(0)));
+    }
+
+    @Test
+    void tampered_multi_proof_fails() {
+        MultiProof proof = tree.getMultiProof(List.of("7", "900", "3000", "missing"));
+        assertArrayEquals(new int[]{7, 900, 3000}, proof.getLeafIndices());
+        assertFalse(tree.verifyMultiProof(List.of("7", "901", "3000"), proof));
+
+        byte[] siblings = proof.getSiblings().clone();
+        siblings[5] ^= 1;
+        MultiProof tampered = new MultiProof(proof.getLeafCount(), proof.getLeafIndices(), proof.getHashLength(), siblings);
+        assertFalse(tree.verifyMultiProof(List.of("7", "900", "3000"), tampered));
+
+        MultiProof shortened = new MultiProof(proof.getLeafCount(), proof.getLeafIndices(), proof.getHashLength(),
+                Arrays.copyOf(proof.getSiblings(), proof.getSiblings().length - 32));
+        assertFalse(tree.verifyMultiProof(List.of("7", "900", "3000"), shortened));
+
+        HashFunction sha256 = tree.getHashFunction();
+        List<byte[]> leafHashes = List.of(sha256.hash("7".getBytes(StandardCharsets.UTF_8)),
+                sha256.hash("900".getBytes(StandardCharsets.UTF_8)), sha256.hash("3000".getBytes(StandardCharsets.UTF_8)));
+        assertTrue(proof.verify(leafHashes, tree.getRootHash(), sha256));
+    }
+}
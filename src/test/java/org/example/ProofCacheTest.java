@@ -0,0 +1,127 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProofCacheTest {
+
+    private static final List<String> data = IntStream.range(0, 1001).mapToObj(Integer::toString).toList();
+
+    private static MerkleTreeConfig cached(int size) {
+        return MerkleTreeConfig.builder().proofCacheSize(size).pinnedLevels(3).build();
+    }
+
+    @Test
+    void repeated_proofs_are_served_from_the_cache() {
+        MerkleTree tree = new MerkleTree(data, cached(16));
+        ProofCache cache = tree.getProofCache();
+
+        List<MerkleProof> first = tree.getMerkleProof(42);
+        List<MerkleProof> second = tree.getMerkleProof("42");
+
+        assertEquals(new MerkleTree(data).getMerkleProof(42), first);
+        assertEquals(first, second);
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void update_marks_only_the_touched_steps_stale() {
+        MerkleTree tree = new MerkleTree(data, cached(16));
+        ProofCache cache = tree.getProofCache();
+        tree.getMerkleProof(0);
+        tree.getMerkleProof(1);
+        tree.getMerkleProof(3);
+
+        // leaf 1 is the sibling of leaf 0, leaf 3 only shares the level above with it
+        tree.updateLeaves(List.of(new MerkleNode("changed", null, 1)), null);
+        tree.getMerkleProof(0);
+        tree.getMerkleProof(1);
+        tree.getMerkleProof(3);
+
+        List<String> expected = new ArrayList<>(data);
+        expected.set(1, "changed");
+        MerkleTree reference = new MerkleTree(expected);
+        for (int leaf : new int[]{0, 1, 3}) {
+            assertEquals(reference.getMerkleProof(leaf), tree.getMerkleProof(leaf));
+        }
+        // leaf 0 lost every step, leaf 3 kept its first one and leaf 1 kept them all
+        assertEquals(3 + 1, cache.getMissCount());
+        assertEquals(1, cache.getPartialHitCount());
+        assertEquals(1 + 3, cache.getHitCount());
+    }
+
+    @Test
+    void least_recently_used_leaf_is_evicted() {
+        MerkleTree tree = new MerkleTree(data, cached(2));
+        ProofCache cache = tree.getProofCache();
+        tree.getMerkleProof(1);
+        tree.getMerkleProof(2);
+        tree.getMerkleProof(1);
+        tree.getMerkleProof(3);
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        tree.getMerkleProof(1);
+        assertEquals(2, cache.getHitCount());
+        tree.getMerkleProof(2);
+        assertEquals(4, cache.getMissCount());
+    }
+
+    @Test
+    void cached_proofs_follow_random_updates_appends_and_truncations() {
+        MerkleTree tree = new MerkleTree(data, cached(64));
+        List<String> expected = new ArrayList<>(data);
+        Random random = new Random(7);
+        for (int round = 0; round < 50; round++) {
+            List<MerkleNode> batch = new ArrayList<>();
+            for (int j = 0; j < 3; j++) {
+                int leaf = random.nextInt(expected.size());
+                String value = "r" + round + "-" + j;
+                expected.set(leaf, value);
+                batch.add(new MerkleNode(value, null, leaf));
+            }
+            tree.updateLeaves(batch, null);
+            if (round % 10 == 9) {
+                tree.append("a" + round);
+                expected.add("a" + round);
+            } else if (round % 10 == 4) {
+                tree.truncate(expected.size() - 1);
+                expected.remove(expected.size() - 1);
+            }
+            for (int j = 0; j < 20; j++) {
+                int leaf = random.nextInt(100) + (j % 2 == 0 ? 0 : expected.size() - 100);
+                assertTrue(tree.verifyMerkleProof(expected.get(leaf), tree.getMerkleProof(leaf)), "leaf " + leaf);
+            }
+        }
+        assertArrayEquals(new MerkleTree(expected).getRootHash(), tree.getRootHash());
+        assertTrue(tree.getProofCache().getHitCount() + tree.getProofCache().getPartialHitCount() > 0);
+    }
+
+    @Test
+    void mapped_tree_pins_top_levels_and_writes_through(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("tree.mkl");
+        new MerkleTree(data).save(file);
+        MerkleTreeConfig config = MerkleTreeConfig.builder().proofCacheSize(8).pinnedLevels(4).build();
+        try (MerkleTree mapped = MerkleTree.open(file, config)) {
+            assertEquals(new MerkleTree(data).getMerkleProof(500), mapped.getMerkleProof(500));
+            mapped.updateLeaves(List.of(new MerkleNode("changed", null, 500)), null);
+            assertTrue(mapped.verifyMerkleProof("changed", mapped.getMerkleProof(500)));
+        }
+        List<String> expected = new ArrayList<>(data);
+        expected.set(500, "changed");
+        try (MerkleTree reopened = MerkleTree.open(file)) {
+            assertArrayEquals(new MerkleTree(expected).getRootHash(), reopened.getRootHash());
+        }
+    }
+}
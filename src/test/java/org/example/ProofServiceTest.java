@@ -0,0 +1,120 @@
+package org.example;
+
+import org.example.MerkleTreeMetrics.Operation;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProofServiceTest {
+
+    private static final List<String> data = IntStream.range(0, 5000).mapToObj(Integer::toString).toList();
+
+    @Test
+    void concurrent_requests_are_answered_like_the_tree() {
+        MerkleTree tree = new MerkleTree(data);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try (ProofService service = new ProofService(tree, executor, 64, 2)) {
+            List<CompletableFuture<List<MerkleProof>>> byIndex = new ArrayList<>();
+            List<CompletableFuture<List<MerkleProof>>> byValue = new ArrayList<>();
+            for (int i = 0; i < 2000; i++) {
+                // many requests hit the same few leaves
+                byIndex.add(service.getMerkleProof(i % 50));
+                byValue.add(service.getMerkleProof(Integer.toString(i % 70)));
+            }
+            for (int i = 0; i < 2000; i++) {
+                assertEquals(tree.getMerkleProof(i % 50), byIndex.get(i).join());
+                assertEquals(tree.getMerkleProof(Integer.toString(i % 70)), byValue.get(i).join());
+            }
+            assertTrue(service.verifyMerkleProof("7", tree.getMerkleProof(7)).join());
+            assertFalse(service.verifyMerkleProof("8", tree.getMerkleProof(7)).join());
+            assertEquals(List.of(), service.getMerkleProof("missing").join());
+            CompletableFuture<List<MerkleProof>> outOfRange = service.getMerkleProof(data.size());
+            assertThrows(CompletionException.class, outOfRange::join);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void proofs_stay_valid_while_updates_land() {
+        MerkleTree tree = new MerkleTree(data);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        ProofService service = new ProofService(tree, executor);
+        List<byte[]> roots = new ArrayList<>(List.of(tree.getRootHash()));
+        List<CompletableFuture<List<MerkleProof>>> proofs = new ArrayList<>();
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 200; i++) {
+                proofs.add(service.getMerkleProof(i * 25));
+            }
+            tree.updateLeaves(List.of(new MerkleNode("u" + round, null, 1)), null);
+            roots.add(tree.getRootHash());
+        }
+        // each proof comes from one whole version, whichever was current when its batch ran
+        for (int j = 0; j < proofs.size(); j++) {
+            int leaf = j % 200 * 25;
+            List<MerkleProof> proof = proofs.get(j).join();
+            assertTrue(roots.stream().anyMatch(root ->
+                    MerkleProofVerifier.verify(data.get(leaf), leaf, data.size(), proof, root, tree.getHashFunction())));
+        }
+        service.close();
+        assertThrows(CompletionException.class, () -> service.getMerkleProof(1).join());
+        executor.shutdown();
+    }
+
+    @Test
+    void lookups_by_value_are_answered_while_a_large_update_is_in_flight() throws Exception {
+        CountDownLatch updating = new CountDownLatch(1);
+        CountDownLatch answered = new CountDownLatch(1);
+        // holds the update under the write lock until the lookups have been answered
+        InMemoryMerkleTreeMetrics metrics = new InMemoryMerkleTreeMetrics() {
+            @Override
+            public void recordLockWait(Operation operation, long nanos) {
+                super.recordLockWait(operation, nanos);
+                if (operation != Operation.UPDATE) return;
+                updating.countDown();
+                try {
+                    answered.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        MerkleTree tree = new MerkleTree(data, MerkleTreeConfig.builder().metrics(metrics).build());
+        List<MerkleNode> update = IntStream.range(0, data.size())
+                .mapToObj(i -> new MerkleNode("v" + i, null, i)).toList();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try (ProofService service = new ProofService(tree, executor)) {
+            CompletableFuture<Void> updated = CompletableFuture.runAsync(() -> tree.updateLeaves(update, null));
+            assertTrue(updating.await(10, TimeUnit.SECONDS));
+            List<CompletableFuture<List<MerkleProof>>> byValue = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                byValue.add(service.getMerkleProof(Integer.toString(i * 5)));
+            }
+            for (int i = 0; i < 1000; i++) {
+                int leaf = i * 5;
+                List<MerkleProof> proof = byValue.get(i).get(10, TimeUnit.SECONDS);
+                assertTrue(MerkleProofVerifier.verify(data.get(leaf), leaf, data.size(), proof, tree.getRootHash(), tree.getHashFunction()));
+            }
+            assertFalse(updated.isDone());
+            // the version read carries its own leaf index, so values are looked up without a scan or a lock
+            assertNotNull(tree.snapshot().leafIndex());
+            assertEquals(0, metrics.lockWait(Operation.PROOF).count());
+            answered.countDown();
+            updated.get(10, TimeUnit.SECONDS);
+            assertArrayEquals(new int[]{5}, tree.findLeafIndices("v5"));
+        } finally {
+            answered.countDown();
+            executor.shutdown();
+        }
+    }
+}
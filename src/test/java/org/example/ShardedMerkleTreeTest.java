@@ -0,0 +1,153 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShardedMerkleTreeTest {
+
+    private static List<String> values(int count) {
+        return IntStream.range(0, count).mapToObj(Integer::toString).toList();
+    }
+
+    @Test
+    void root_and_proofs_match_the_unsharded_tree() {
+        for (int size : new int[]{1, 5, 1000, 1025, 3000, 5000, 8192}) {
+            for (int shardCount : new int[]{1, 2, 4, 8}) {
+                List<String> data = values(size);
+                MerkleTree plain = new MerkleTree(data);
+                ShardedMerkleTree sharded = new ShardedMerkleTree(data, shardCount, MerkleTreeConfig.defaults());
+                String label = size + " leaves in " + shardCount + " shards";
+
+                assertArrayEquals(plain.getRootHash(), sharded.getRootHash(), label);
+                assertTrue(sharded.shardCount() <= shardCount, label);
+                for (int leaf : new int[]{0, size / 2, size - 1}) {
+                    assertEquals(plain.getMerkleProof(leaf), sharded.getMerkleProof(leaf), label + ", leaf " + leaf);
+                }
+                assertEquals(plain.getMerkleProof("0"), sharded.getMerkleProof("0"));
+                assertTrue(sharded.verifyMerkleProof(data.get(size - 1), sharded.getMerkleProof(size - 1)), label);
+            }
+        }
+    }
+
+    @Test
+    void small_tree_grown_by_appends_keeps_few_shards() {
+        ShardedMerkleTree sharded = new ShardedMerkleTree(values(1), 4, MerkleTreeConfig.defaults());
+        List<String> more = values(5000).stream().map(v -> "a" + v).toList();
+        sharded.appendAll(more);
+
+        List<String> expected = new ArrayList<>(values(1));
+        expected.addAll(more);
+        // 5001 leaves do not fit in 4 shards of 1024, so pairs of shards merged into shards of 2048
+        assertEquals(3, sharded.shardCount());
+        assertArrayEquals(new MerkleTree(expected).getRootHash(), sharded.getRootHash());
+    }
+
+    @Test
+    void appends_merge_shards_instead_of_adding_more_than_configured() throws IOException {
+        for (int arity : new int[]{2, 4}) {
+            MerkleTreeConfig config = MerkleTreeConfig.builder().arity(arity).offHeap(true).build();
+            List<String> expected = new ArrayList<>(values(3000));
+            try (ShardedMerkleTree sharded = new ShardedMerkleTree(expected, 2, config)) {
+                for (int round = 0; round < 12; round++) {
+                    List<String> more = IntStream.range(0, 700 * (round + 1)).mapToObj(i -> "a" + expected.size() + i).toList();
+                    sharded.appendAll(more);
+                    expected.addAll(more);
+                    int leaf = expected.size() / 3;
+                    sharded.updateLeaves(List.of(new MerkleNode("u" + round, null, leaf)), null);
+                    expected.set(leaf, "u" + round);
+
+                    String label = "arity " + arity + ", " + expected.size() + " leaves";
+                    assertTrue(sharded.shardCount() <= 2, label);
+                    MerkleTree plain = new MerkleTree(expected, config.toBuilder().offHeap(false).build());
+                    assertEquals(expected.size(), sharded.size(), label);
+                    assertArrayEquals(plain.getRootHash(), sharded.getRootHash(), label);
+                    for (int i : new int[]{0, leaf, expected.size() - 1}) {
+                        assertArrayEquals(plain.getGroupProof(i).getSiblings(), sharded.getGroupProof(i).getSiblings(), label);
+                    }
+                    if (arity == 2) {
+                        assertEquals(plain.getMerkleProof("u" + round), sharded.getMerkleProof("u" + round), label);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void wide_sharded_tree_matches_the_unsharded_tree() {
+        List<String> data = values(10_000);
+        MerkleTreeConfig config = MerkleTreeConfig.builder().arity(4).build();
+        MerkleTree plain = new MerkleTree(data, config);
+        ShardedMerkleTree sharded = new ShardedMerkleTree(data, 4, config);
+
+        assertArrayEquals(plain.getRootHash(), sharded.getRootHash());
+        for (int leaf : new int[]{0, 5000, 9999}) {
+            GroupProof proof = sharded.getGroupProof(leaf);
+            assertArrayEquals(plain.getGroupProof(leaf).getSiblings(), proof.getSiblings());
+            assertTrue(plain.verifyGroupProof(data.get(leaf), proof));
+        }
+    }
+
+    @Test
+    void off_heap_shards_are_released_on_close() throws IOException {
+        List<String> data = values(3000);
+        ShardedMerkleTree sharded = new ShardedMerkleTree(data, 2,
+                MerkleTreeConfig.builder().offHeap(true).build());
+        try (sharded) {
+            sharded.updateLeaves(List.of(new MerkleNode("changed", null, 2500)), null);
+            List<String> expected = new ArrayList<>(data);
+            expected.set(2500, "changed");
+            assertArrayEquals(new MerkleTree(expected).getRootHash(), sharded.getRootHash());
+            assertTrue(sharded.verifyMerkleProof("changed", sharded.getMerkleProof("changed")));
+        }
+        assertThrows(IllegalStateException.class, sharded::getRootHash);
+    }
+
+    @Test
+    void concurrent_writers_on_different_shards_and_appends() {
+        ExecutorService executors = Executors.newFixedThreadPool(4);
+        try {
+            List<String> expected = new ArrayList<>(values(4000));
+            ShardedMerkleTree sharded = new ShardedMerkleTree(expected, 4,
+                    MerkleTreeConfig.builder().executor(executors).build());
+            List<CompletableFuture<Void>> writers = new ArrayList<>();
+            for (int shard = 0; shard < 4; shard++) {
+                int first = shard * 1024;
+                writers.add(CompletableFuture.runAsync(() -> {
+                    for (int i = 0; i < 50; i++) {
+                        sharded.updateLeaves(List.of(new MerkleNode("w" + (first + i), null, first + i)), null);
+                    }
+                }, executors));
+            }
+            writers.forEach(CompletableFuture::join);
+            for (int shard = 0; shard < 4; shard++) {
+                for (int i = 0; i < 50; i++) {
+                    expected.set(shard * 1024 + i, "w" + (shard * 1024 + i));
+                }
+            }
+            assertArrayEquals(new MerkleTree(expected).getRootHash(), sharded.getRootHash());
+
+            List<String> more = values(1200).stream().map(v -> "a" + v).toList();
+            sharded.appendAll(more);
+            sharded.updateLeaves(List.of(new MerkleNode("x", null, 3), new MerkleNode("y", null, 5000)), executors);
+            expected.addAll(more);
+            expected.set(3, "x");
+            expected.set(5000, "y");
+
+            assertEquals(3, sharded.shardCount());
+            assertEquals(expected.size(), sharded.size());
+            assertArrayEquals(new MerkleTree(expected).getRootHash(), sharded.getRootHash());
+            assertEquals(new MerkleTree(expected).getMerkleProof(5199), sharded.getMerkleProof(5199));
+        } finally {
+            executors.shutdown();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SparseMerkleTreeTest {
+
+    private static final List<String> keys = IntStream.range(0, 200).mapToObj(i -> "key" + i).toList();
+
+    private static byte[] utf8(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void empty_tree_root_is_the_empty_subtree_hash() {
+        HashFunction hf = new Hash_SHA_256();
+        byte[] empty = new byte[32];
+        for (int height = 0; height < 256; height++) {
+            empty = hf.combine(empty, empty);
+        }
+        SparseMerkleTree tree = new SparseMerkleTree(hf);
+        assertArrayEquals(empty, tree.getRootHash());
+        assertTrue(tree.getProof("missing").verify(utf8("missing"), null, empty, hf));
+    }
+
+    @Test
+    void root_does_not_depend_on_insertion_order() {
+        SparseMerkleTree first = new SparseMerkleTree();
+        keys.forEach(k -> first.put(k, "v" + k));
+        List<String> shuffled = new ArrayList<>(keys);
+        Collections.shuffle(shuffled, new Random(7));
+        SparseMerkleTree second = new SparseMerkleTree();
+        shuffled.forEach(k -> second.put(k, "v" + k));
+
+        assertEquals(keys.size(), second.size());
+        assertArrayEquals(first.getRootHash(), second.getRootHash());
+        assertEquals("vkey42", second.get("key42"));
+        assertNull(second.get("key200"));
+    }
+
+    @Test
+    void update_and_remove_restore_earlier_roots() {
+        SparseMerkleTree tree = new SparseMerkleTree();
+        keys.subList(0, 50).forEach(k -> tree.put(k, "a"));
+        byte[] before = tree.getRootHash();
+
+        tree.put("key7", "b");
+        assertFalse(Arrays.equals(before, tree.getRootHash()));
+        tree.put("key7", "a");
+        assertArrayEquals(before, tree.getRootHash());
+
+        tree.put("extra", "x");
+        assertTrue(tree.remove("extra"));
+        assertFalse(tree.remove("extra"));
+        assertArrayEquals(before, tree.getRootHash());
+        assertEquals(50, tree.size());
+
+        keys.subList(0, 50).forEach(tree::remove);
+        assertArrayEquals(new SparseMerkleTree().getRootHash(), tree.getRootHash());
+    }
+
+    @Test
+    void inclusion_and_absence_proofs_verify() {
+        HashFunction hf = new Hash_Murmur3_128();
+        SparseMerkleTree tree = new SparseMerkleTree(hf);
+        keys.forEach(k -> tree.put(k, "v" + k));
+        byte[] root = tree.getRootHash();
+
+        for (String key : keys) {
+            SparseMerkleProof proof = tree.getProof(key);
+            assertTrue(proof.isInclusion());
+            assertTrue(proof.verify(utf8(key), utf8("v" + key), root, hf));
+            assertFalse(proof.verify(utf8(key), utf8("other"), root, hf));
+            // only the branches above the leaf carry a sibling hash
+            assertTrue(proof.getSiblings().length / hf.digestLength() < 20);
+        }
+        SparseMerkleProof absent = tree.getProof("key-missing");
+        assertFalse(absent.isInclusion());
+        assertTrue(absent.verify(utf8("key-missing"), null, root, hf));
+        assertTrue(absent.verify("key-missing", null, root, hf));
+        assertTrue(tree.getProof("key1").verify("key1", "vkey1", root, hf));
+        assertFalse(absent.verify(utf8("key1"), null, root, hf));
+        assertFalse(tree.getProof("key1").verify(utf8("key1"), utf8("vkey1"), new SparseMerkleTree(hf).getRootHash(), hf));
+    }
+}
@@ -0,0 +1,75 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamingMerkleBuilderTest {
+
+    @Test
+    void root_same_as_tree_for_every_size() {
+        HashFunction sha256 = new Hash_SHA_256();
+        for (int size = 1; size <= 70; size++) {
+            List<String> values = IntStream.range(0, size).mapToObj(Integer::toString).toList();
+            assertArrayEquals(new MerkleTree(values).getRootHash(), StreamingMerkleBuilder.root(values.iterator(), sha256), "size " + size);
+        }
+    }
+
+    @Test
+    void root_from_byte_records_and_lines() throws Exception {
+        List<String> values = List.of("A", "B", "C", "D", "E");
+        byte[] expected = new MerkleTree(values).getRootHash();
+
+        assertArrayEquals(expected, StreamingMerkleBuilder.root(values.stream().map(v -> v.getBytes(StandardCharsets.UTF_8)), new Hash_SHA_256()));
+
+        StreamingMerkleBuilder lines = new StreamingMerkleBuilder();
+        lines.addLines(new ByteArrayInputStream("A\nB\nC\nD\nE\n".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(5, lines.count());
+        assertArrayEquals(expected, lines.finish());
+
+        StreamingMerkleBuilder records = new StreamingMerkleBuilder();
+        records.addRecords(new ByteArrayInputStream("ABCDE".getBytes(StandardCharsets.UTF_8)), 1);
+        assertArrayEquals(expected, records.finish());
+    }
+
+    @Test
+    void level_hashes_written_to_disk(@TempDir Path directory) throws Exception {
+        List<String> values = IntStream.range(0, 1001).mapToObj(Integer::toString).toList();
+        byte[] root;
+        try (FileLevelSink sink = new FileLevelSink(directory, 32)) {
+            StreamingMerkleBuilder builder = new StreamingMerkleBuilder(new Hash_SHA_256(), sink);
+            values.forEach(builder::add);
+            root = builder.finish();
+        }
+        int size = values.size();
+        for (int level = 0; ; level++) {
+            assertEquals(size * 32L, Files.size(FileLevelSink.levelFile(directory, level)), "level " + level);
+            if (size == 1) {
+                assertArrayEquals(root, Files.readAllBytes(FileLevelSink.levelFile(directory, level)));
+                break;
+            }
+            size = (size + 1) / 2;
+        }
+        MerkleTree tree = new MerkleTree(values);
+        byte[] leaves = Files.readAllBytes(FileLevelSink.levelFile(directory, 0));
+        byte[] level1 = Files.readAllBytes(FileLevelSink.levelFile(directory, 1));
+        // the proof of leaf 1000 starts with its duplicated self, then the last node of level 1
+        List<MerkleProof> proof = tree.getMerkleProof(1000);
+        assertArrayEquals(Arrays.copyOfRange(leaves, 1000 * 32, 1001 * 32), proof.get(0).getHash());
+        assertArrayEquals(Arrays.copyOfRange(level1, 500 * 32, 501 * 32), proof.get(1).getHash());
+    }
+
+    @Test
+    void finish_without_leaves_fails() {
+        assertThrows(IllegalStateException.class, () -> new StreamingMerkleBuilder().finish());
+    }
+}
@@ -0,0 +1,127 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TreeSyncTest {
+
+    private static final List<String> data = IntStream.range(0, 10_000).mapToObj(Integer::toString).toList();
+
+    @Test
+    void replica_catches_up_with_bandwidth_proportional_to_the_differences() throws IOException {
+        List<String> source = new ArrayList<>(data);
+        source.set(17, "a");
+        source.set(4242, "b");
+        source.set(9999, "c");
+        for (int i = 0; i < 20; i++) {
+            source.add("new" + i);
+        }
+        MerkleTree primary = new MerkleTree(source);
+        MerkleTree replica = new MerkleTree(data);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            LoopbackSyncTransport transport = new LoopbackSyncTransport(new TreeSyncServer(primary), executor);
+            SyncResult result = new TreeSyncClient(replica, transport, 8, 2).sync();
+
+            assertTrue(result.isRootMatches());
+            assertArrayEquals(primary.getRootHash(), replica.getRootHash());
+            assertEquals(3, result.getUpdatedLeaves());
+            assertEquals(20, result.getAppendedLeaves());
+            assertEquals("b", replica.getValue(4242));
+            // a few hashes per level and difference, far from the 320 KB of leaf hashes
+            assertTrue(transport.getBytesReceived() < 20_000, "received " + transport.getBytesReceived());
+
+            SyncResult again = new TreeSyncClient(replica, transport).sync();
+            assertEquals(0, again.getUpdatedLeaves() + again.getAppendedLeaves());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void longer_replica_is_truncated_and_hash_only_leaves_are_copied_as_hashes() throws IOException {
+        MerkleTreeConfig config = MerkleTreeConfig.defaults();
+        List<byte[]> hashes = new ArrayList<>();
+        MerkleTree hasher = new MerkleTree(List.of("x"));
+        for (String value : data.subList(0, 5000)) {
+            hashes.add(hasher.hashLeaf(value.getBytes()));
+        }
+        hashes.set(10, hasher.hashLeaf("changed".getBytes()));
+        MerkleTree primary = MerkleTree.ofLeafHashes(hashes, config);
+        MerkleTree replica = new MerkleTree(data);
+
+        SyncResult result = new TreeSyncClient(replica, new LoopbackSyncTransport(new TreeSyncServer(primary))).sync();
+
+        assertTrue(result.isRootMatches());
+        assertEquals(5000, result.getRemovedLeaves());
+        assertEquals(1, result.getUpdatedLeaves());
+        assertNull(replica.getValue(10));
+        assertEquals(5000, replica.size());
+        assertArrayEquals(primary.getRootHash(), replica.getRootHash());
+    }
+
+    @Test
+    void long_tail_is_fetched_as_ranges() throws IOException {
+        MerkleTree primary = new MerkleTree(data);
+        MerkleTree replica = new MerkleTree(data.subList(0, 10));
+        TreeSyncServer server = new TreeSyncServer(primary);
+
+        SyncResult result = new TreeSyncClient(replica, new LoopbackSyncTransport(server), 1000, 2).sync();
+
+        assertTrue(result.isRootMatches());
+        assertEquals(9990, result.getAppendedLeaves());
+        assertEquals("9999", replica.getValue(9999));
+
+        long session = ByteBuffer.wrap(server.handle(new byte[]{TreeSyncProtocol.OPEN}), 1, Long.BYTES).getLong();
+        byte[] tooLong = TreeSyncProtocol.request(TreeSyncProtocol.LEAF_RANGE, session, 8)
+                .putInt(0).putInt(TreeSyncProtocol.MAX_RANGE + 1).array();
+        assertEquals(TreeSyncProtocol.ERROR, server.handle(tooLong)[0]);
+    }
+
+    @Test
+    void idle_sessions_expire_and_copied_sessions_are_bounded() throws IOException {
+        AtomicLong clock = new AtomicLong();
+        MerkleTree offHeap = new MerkleTree(data, MerkleTreeConfig.builder().offHeap(true).build());
+        try (offHeap) {
+            TreeSyncServer server = new TreeSyncServer(offHeap, 1, 1000, clock::get);
+            byte[] open = {TreeSyncProtocol.OPEN};
+            long session = ByteBuffer.wrap(server.handle(open), 1, Long.BYTES).getLong();
+            assertEquals(TreeSyncProtocol.ERROR, server.handle(open)[0]);
+
+            byte[] hashes = TreeSyncProtocol.request(TreeSyncProtocol.NODE_HASHES, session, 12)
+                    .putInt(0).putInt(1).putInt(0).array();
+            clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(999));
+            assertEquals(TreeSyncProtocol.OK, server.handle(hashes)[0]);
+            clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(1001));
+            assertEquals(TreeSyncProtocol.ERROR, server.handle(hashes)[0]);
+            assertEquals(0, server.sessionCount());
+
+            // the expired session gave its copy back, and a closed one does too
+            new TreeSyncClient(new MerkleTree(data), new LoopbackSyncTransport(server)).sync();
+            assertEquals(0, server.sessionCount());
+            assertEquals(TreeSyncProtocol.OK, server.handle(open)[0]);
+        }
+    }
+
+    @Test
+    void mismatched_trees_and_server_errors_are_reported() {
+        MerkleTree wide = new MerkleTree(data, MerkleTreeConfig.builder().arity(4).build());
+        TreeSyncServer server = new TreeSyncServer(wide);
+        assertThrows(IOException.class,
+                () -> new TreeSyncClient(new MerkleTree(data), new LoopbackSyncTransport(server)).sync());
+
+        byte[] unknown = TreeSyncProtocol.request(TreeSyncProtocol.LEAVES, 99, 4).putInt(0).array();
+        assertEquals(TreeSyncProtocol.ERROR, server.handle(unknown)[0]);
+    }
+}